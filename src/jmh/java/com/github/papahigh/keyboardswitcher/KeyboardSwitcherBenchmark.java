@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.papahigh.keyboardswitcher;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures switching of the random text typed with all the layout chars.
+ * The dense char array lookup the switchers used before the compact tables is kept as a baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class KeyboardSwitcherBenchmark {
+
+    @Param({"RUSSIAN", "UKRAINIAN", "BELARUSIAN"})
+    public Languages language;
+
+    @Param({"4", "16", "64", "4096"})
+    public int length;
+
+    private KeyboardSwitcher switcher;
+    private String text;
+    private char[] chars;
+    private char[] switchedChars;
+    private char[] denseMappings;
+    private BytesRef bytes;
+    private BytesRefBuilder switchedBytes;
+
+    @Setup
+    public void setup() {
+        switcher = language.newInstance();
+
+        StringBuilder alphabet = new StringBuilder();
+        CharMappings charMappings = switcher.getCharMappings();
+        for (char c = 1; c < Character.MAX_VALUE; c++) {
+            if (charMappings.get(c) != Character.MIN_VALUE) {
+                alphabet.append(c);
+            }
+        }
+
+        denseMappings = new char[alphabet.charAt(alphabet.length() - 1) + 1];
+        for (int i = 0; i < alphabet.length(); i++) {
+            denseMappings[alphabet.charAt(i)] = charMappings.get(alphabet.charAt(i));
+        }
+
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(i % 8 == 7 ? ' ' : alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+
+        text = builder.toString();
+        chars = text.toCharArray();
+        switchedChars = new char[chars.length];
+        bytes = new BytesRef(text);
+        switchedBytes = new BytesRefBuilder();
+    }
+
+    @Benchmark
+    public String encode() {
+        return switcher.encode(text);
+    }
+
+    @Benchmark
+    public char[] switchLayoutChars() {
+        switcher.switchLayout(chars, 0, chars.length, switchedChars, 0);
+        return switchedChars;
+    }
+
+    @Benchmark
+    public char[] switchLayoutCharsDense() {
+        final char[] mappings = denseMappings;
+        for (int i = 0; i < chars.length; i++) {
+            final char curr = chars[i];
+            final char mapped = curr < mappings.length ? mappings[curr] : Character.MIN_VALUE;
+            switchedChars[i] = mapped != Character.MIN_VALUE ? mapped : curr;
+        }
+        return switchedChars;
+    }
+
+    @Benchmark
+    public BytesRef switchLayoutBytes() {
+        switcher.switchLayout(bytes, switchedBytes);
+        return switchedBytes.get();
+    }
+}
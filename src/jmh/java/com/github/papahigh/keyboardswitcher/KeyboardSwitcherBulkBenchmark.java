@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.papahigh.keyboardswitcher;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures switching of whole document fields against the scalar loops looking up every char in the blocks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class KeyboardSwitcherBulkBenchmark {
+
+    private static final String LATIN = "qwertyuiopasdfghjklzxcvbnm ";
+    private static final String CYRILLIC = "йцукенгшщзхъфывапролджэячсмитьбю ";
+    private static final String OTHER = "0123456789 .,-";
+
+    @Param({"latin", "cyrillic", "mixed"})
+    public String text;
+
+    @Param({"1024", "16384"})
+    public int length;
+
+    private KeyboardSwitcher switcher;
+    private CharMappings charMappings;
+    private String source;
+    private BytesRef bytes;
+    private BytesRefBuilder switchedBytes;
+
+    @Setup
+    public void setup() {
+        switcher = Languages.RUSSIAN.newInstance();
+        charMappings = switcher.getCharMappings();
+
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            String alphabet;
+            switch (text) {
+                case "latin":
+                    alphabet = LATIN;
+                    break;
+                case "cyrillic":
+                    alphabet = CYRILLIC;
+                    break;
+                default:
+                    alphabet = i % 64 < 32 ? LATIN : i % 64 < 48 ? CYRILLIC : OTHER;
+            }
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        source = builder.toString();
+        bytes = new BytesRef(source);
+        switchedBytes = new BytesRefBuilder();
+    }
+
+    @Benchmark
+    public String encode() {
+        return switcher.encode(source);
+    }
+
+    @Benchmark
+    public String encodeScalar() {
+        char[] chars = source.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            char mapped = charMappings.get(chars[i]);
+            if (mapped != Character.MIN_VALUE) {
+                chars[i] = mapped;
+            }
+        }
+        return new String(chars);
+    }
+
+    @Benchmark
+    public BytesRef switchLayoutBytes() {
+        switcher.switchLayout(bytes, switchedBytes);
+        return switchedBytes.get();
+    }
+
+    @Benchmark
+    public BytesRef switchLayoutBytesScalar() {
+        final byte[] in = bytes.bytes;
+        final int end = bytes.offset + bytes.length;
+        switchedBytes.clear();
+        switchedBytes.grow(bytes.length * 3);
+        final byte[] out = switchedBytes.bytes();
+
+        int upto = 0;
+        int i = bytes.offset;
+        while (i < end) {
+            final int b = in[i] & 0xFF;
+            final int codePoint;
+            final int length;
+            if (b < 0x80) {
+                codePoint = b;
+                length = 1;
+            } else if (b < 0xE0) {
+                codePoint = ((b & 0x1F) << 6) | (in[i + 1] & 0x3F);
+                length = 2;
+            } else {
+                codePoint = ((b & 0x0F) << 12) | ((in[i + 1] & 0x3F) << 6) | (in[i + 2] & 0x3F);
+                length = 3;
+            }
+            final int mapped = charMappings.getUtf8(codePoint);
+            if (mapped == 0) {
+                for (int k = 0; k < length; k++) {
+                    out[upto++] = in[i + k];
+                }
+            } else if (mapped >>> 24 == 1) {
+                out[upto++] = (byte) mapped;
+            } else {
+                out[upto++] = (byte) (mapped >>> 8);
+                out[upto++] = (byte) mapped;
+            }
+            i += length;
+        }
+        switchedBytes.setLength(upto);
+        return switchedBytes.get();
+    }
+}
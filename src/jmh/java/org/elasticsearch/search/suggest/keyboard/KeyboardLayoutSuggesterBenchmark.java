@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.suggest.keyboard;
+
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcher;
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcherProvider;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.elasticsearch.common.settings.Settings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the suggester against an in-memory index which term frequencies follow Zipf's law.
+ * Most of the suggest text tokens are typed with the switched layout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class KeyboardLayoutSuggesterBenchmark {
+
+    private static final String FIELD = "content";
+    private static final String ALPHABET = "абвгдежзийклмнопрстуфхцчшщъыьэюя";
+    private static final int VOCABULARY_SIZE = 50_000;
+    private static final int DOCUMENTS = 100_000;
+    private static final int DOCUMENT_LENGTH = 12;
+    private static final int QUERIES = 1024;
+
+    @Param({"1", "40"})
+    public int segments;
+
+    @Param({"1", "20"})
+    public int tokens;
+
+    @Param({"false", "true"})
+    public boolean addOriginal;
+
+    @Param({"0", "10000"})
+    public int cacheSize;
+
+    @Param({"false", "true"})
+    public boolean detectLayout;
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+    private KeyboardLayoutSuggestionContext[] contexts;
+    private CharsRefBuilder spare;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        KeyboardSwitcher switcher = KeyboardSwitcherProvider.provide("russian");
+        Analyzer analyzer = new WhitespaceAnalyzer();
+
+        String[] vocabulary = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = randomWord(random);
+        }
+        double[] zipf = zipf(VOCABULARY_SIZE);
+
+        directory = new ByteBuffersDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                .setMergePolicy(NoMergePolicy.INSTANCE)
+                .setRAMBufferSizeMB(512);
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            int segmentSize = DOCUMENTS / segments;
+            for (int doc = 0; doc < DOCUMENTS; doc++) {
+                StringBuilder content = new StringBuilder();
+                for (int i = 0; i < DOCUMENT_LENGTH; i++) {
+                    content.append(vocabulary[sample(zipf, random)]).append(' ');
+                }
+                writer.addDocument(Collections.singletonList(new TextField(FIELD, content.toString(), Field.Store.NO)));
+                if ((doc + 1) % segmentSize == 0) {
+                    writer.flush();
+                }
+            }
+        }
+        reader = DirectoryReader.open(directory);
+        searcher = new IndexSearcher(reader);
+        spare = new CharsRefBuilder();
+
+        contexts = new KeyboardLayoutSuggestionContext[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < tokens; i++) {
+                String word = random.nextInt(10) == 0 ? randomWord(random) : vocabulary[sample(zipf, random)];
+                text.append(random.nextInt(10) == 0 ? word : switcher.encode(word)).append(' ');
+            }
+            KeyboardLayoutSuggestionContext context = new KeyboardLayoutSuggestionContext(null, Collections.singletonList(switcher),
+                    0d, -1d, false, false, addOriginal, false, 1000, detectLayout, 0.5f, false, 0, 1, null, 5);
+            context.setField(FIELD);
+            context.setAnalyzer(analyzer);
+            context.setText(new BytesRef(text));
+            context.setSize(5);
+            context.setShardSize(5);
+            contexts[q] = context;
+        }
+
+        KeyboardLayoutSuggester.setTermFrequencyCache(new TermFrequencyCache(Settings.builder()
+                .put(TermFrequencyCache.CACHE_SIZE_SETTING.getKey(), cacheSize)
+                .build()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    @Benchmark
+    public KeyboardLayoutSuggestion innerExecute() throws IOException {
+        KeyboardLayoutSuggestionContext context = contexts[next++ & (QUERIES - 1)];
+        return KeyboardLayoutSuggester.INSTANCE.innerExecute("benchmark", context, searcher, spare);
+    }
+
+    private static String randomWord(Random random) {
+        int length = 2 + random.nextInt(9);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return word.toString();
+    }
+
+    private static double[] zipf(int size) {
+        double[] cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1d / (rank + 1);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int sample(double[] zipf, Random random) {
+        int index = Arrays.binarySearch(zipf, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, zipf.length - 1);
+    }
+}
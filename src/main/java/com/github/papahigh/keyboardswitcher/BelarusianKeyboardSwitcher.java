@@ -23,13 +23,18 @@ import java.util.Objects;
  */
 public class BelarusianKeyboardSwitcher extends KeyboardSwitcher {
 
-    private static final char[] charMappings;
+    private static final CharMappings charMappings;
 
     @Override
-    public char[] getCharMappings() {
+    public CharMappings getCharMappings() {
         return charMappings;
     }
 
+    @Override
+    public String getName() {
+        return "belarusian";
+    }
+
     @Override
     public int hashCode() {
         return Objects.hashCode(RussianKeyboardSwitcher.class);
@@ -48,15 +53,10 @@ public class BelarusianKeyboardSwitcher extends KeyboardSwitcher {
 
     static {
 
-        charMappings = new char['ў' + 1];
-
         String eng = "qwertyuiop[QWERTYUIOP{asdfghjkl;'ASDFGHJKL:\"zxcvbnm,.ZXCVBNM<>";
         String by = "йцукенгшўзхЙЦУКЕНГШЎЗХфывапролджэФЫВАПРОЛДЖЭячсмітьбюЯЧСМІТЬБЮ";
 
-        for (int i = 0; i < eng.length(); i++) {
-            charMappings[eng.charAt(i)] = by.charAt(i);
-            charMappings[by.charAt(i)] = eng.charAt(i);
-        }
+        charMappings = CharMappings.of(eng, by);
 
     }
 
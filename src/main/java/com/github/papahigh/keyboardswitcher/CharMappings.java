@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.papahigh.keyboardswitcher;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compact table of the keyboard layout char mappings. Mapped chars are grouped into a few
+ * blocks, e.g. ASCII and Cyrillic, each looked up by the offset from the first char of the block,
+ * so the size of the table depends on the number of mapped chars rather than on the highest one.
+ */
+public final class CharMappings {
+
+    /**
+     * Chars which are closer to each other are kept within the same block.
+     */
+    private static final int MAX_GAP = 32;
+
+    static final int ASCII = 0x80;
+
+    // first char of every block in ascending order
+    private final char[] starts;
+    // offset of every block within the values followed by the total number of values
+    private final int[] offsets;
+    private final char[] values;
+    // UTF-8 encoded values, see KeyboardSwitcher#switchLayout(BytesRef, BytesRefBuilder)
+    private final int[] utf8Values;
+
+    // direct lookup tables of the ASCII chars, the fast path of bulk switching
+    final char[] ascii = new char[ASCII];
+    final int[] asciiUtf8 = new int[ASCII];
+
+    private CharMappings(char[] starts, int[] offsets, char[] values) {
+        this.starts = starts;
+        this.offsets = offsets;
+        this.values = values;
+        this.utf8Values = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            utf8Values[i] = toUtf8(values[i]);
+        }
+        for (char c = 0; c < ASCII; c++) {
+            ascii[c] = get(c);
+            asciiUtf8[c] = toUtf8(ascii[c]);
+        }
+    }
+
+    /**
+     * Creates mappings of every source char into the target char at the same position and vice versa.
+     */
+    public static CharMappings of(String source, String target) {
+        Builder builder = new Builder();
+        for (int i = 0; i < source.length(); i++) {
+            char from = source.charAt(i);
+            char to = target.charAt(i);
+            if (!builder.put(from, to) || !builder.put(to, from)) {
+                throw new IllegalArgumentException("Conflicting mappings of [" + from + "]");
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return char the provided char is switched into or {@link Character#MIN_VALUE} if it has no mapping
+     */
+    public char get(char c) {
+        final char[] starts = this.starts;
+        final int[] offsets = this.offsets;
+        for (int block = 0; block < starts.length; block++) {
+            final int index = c - starts[block];
+            if (index < 0) {
+                break;
+            }
+            final int offset = offsets[block] + index;
+            if (offset < offsets[block + 1]) {
+                return values[offset];
+            }
+        }
+        return Character.MIN_VALUE;
+    }
+
+    /**
+     * Returns UTF-8 encoded char the provided code point is switched into. The value holds the length
+     * of the switched sequence in the highest byte followed by the sequence bytes.
+     *
+     * @return encoded char or zero if the code point has no mapping
+     */
+    int getUtf8(int codePoint) {
+        final char[] starts = this.starts;
+        final int[] offsets = this.offsets;
+        for (int block = 0; block < starts.length; block++) {
+            final int index = codePoint - starts[block];
+            if (index < 0) {
+                break;
+            }
+            final int offset = offsets[block] + index;
+            if (offset < offsets[block + 1]) {
+                return utf8Values[offset];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return number of chars the table holds including the gaps within blocks
+     */
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CharMappings)) {
+            return false;
+        }
+        CharMappings other = (CharMappings) obj;
+        return Arrays.equals(starts, other.starts) && Arrays.equals(offsets, other.offsets)
+                && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(starts) + Arrays.hashCode(values);
+    }
+
+    private static int toUtf8(char mapped) {
+        if (mapped == Character.MIN_VALUE) {
+            return 0;
+        }
+        if (mapped < 0x80) {
+            return 1 << 24 | mapped;
+        }
+        if (mapped < 0x800) {
+            return 2 << 24 | (0xC0 | mapped >> 6) << 8 | (0x80 | mapped & 0x3F);
+        }
+        return 3 << 24 | (0xE0 | mapped >> 12) << 16 | (0x80 | mapped >> 6 & 0x3F) << 8 | (0x80 | mapped & 0x3F);
+    }
+
+    /**
+     * Collects char mappings and compiles them into the compact table.
+     */
+    static final class Builder {
+
+        private final TreeMap<Character, Character> mappings = new TreeMap<>();
+
+        /**
+         * Maps the source char into the target char, chars mapped into themselves are skipped.
+         *
+         * @return false if the source char is already mapped into another char
+         */
+        boolean put(char from, char to) {
+            Character previous = mappings.get(from);
+            if (previous != null && previous != to) {
+                return false;
+            }
+            if (from != to) {
+                mappings.put(from, to);
+            }
+            return true;
+        }
+
+        CharMappings build() {
+            if (mappings.isEmpty()) {
+                return new CharMappings(new char[0], new int[1], new char[0]);
+            }
+
+            // split the sorted chars into blocks wherever the gap between them is too wide
+            int blocks = 1;
+            char prev = mappings.firstKey();
+            for (char c : mappings.keySet()) {
+                if (c - prev > MAX_GAP) {
+                    blocks++;
+                }
+                prev = c;
+            }
+
+            char[] starts = new char[blocks];
+            int[] offsets = new int[blocks + 1];
+            int block = 0;
+            starts[0] = mappings.firstKey();
+            prev = starts[0];
+            for (char c : mappings.keySet()) {
+                if (c - prev > MAX_GAP) {
+                    offsets[block + 1] = offsets[block] + prev - starts[block] + 1;
+                    starts[++block] = c;
+                }
+                prev = c;
+            }
+            offsets[blocks] = offsets[block] + prev - starts[block] + 1;
+
+            char[] values = new char[offsets[blocks]];
+            block = 0;
+            for (Map.Entry<Character, Character> mapping : mappings.entrySet()) {
+                char c = mapping.getKey();
+                while (block + 1 < blocks && c >= starts[block + 1]) {
+                    block++;
+                }
+                values[offsets[block] + c - starts[block]] = mapping.getValue();
+            }
+            return new CharMappings(starts, offsets, values);
+        }
+    }
+}
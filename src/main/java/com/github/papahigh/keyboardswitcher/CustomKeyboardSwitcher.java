@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.papahigh.keyboardswitcher;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * KeyboardSwitcher for a user-defined keyboard layout. The layout is compiled once
+ * into the same char mappings table the built-in switchers use.
+ */
+public final class CustomKeyboardSwitcher extends KeyboardSwitcher {
+
+    private static final String RULE_SEPARATOR = "=>";
+
+    private final String name;
+    private final CharMappings charMappings;
+
+    /**
+     * Creates switcher from the pair strings, where every char of the source
+     * is switched into the char of the target at the same position and vice versa.
+     */
+    public CustomKeyboardSwitcher(String name, String source, String target) {
+        this.name = requireName(name);
+        this.charMappings = toCharMappings(name, source, target);
+    }
+
+    /**
+     * Creates switcher from the mapping of source chars to target chars, each mapping is applied in both directions.
+     */
+    public CustomKeyboardSwitcher(String name, Map<String, String> mappings) {
+        this.name = requireName(name);
+        StringBuilder source = new StringBuilder();
+        StringBuilder target = new StringBuilder();
+        for (Map.Entry<String, String> mapping : mappings.entrySet()) {
+            source.append(requireChar(name, mapping.getKey()));
+            target.append(requireChar(name, mapping.getValue()));
+        }
+        this.charMappings = toCharMappings(name, source.toString(), target.toString());
+    }
+
+    /**
+     * Creates switcher from the rules in the "source =&gt; target" format.
+     */
+    public static CustomKeyboardSwitcher parse(String name, List<String> rules) {
+        StringBuilder source = new StringBuilder();
+        StringBuilder target = new StringBuilder();
+        for (String rule : rules) {
+            String trimmed = rule.trim();
+            int separator = trimmed.indexOf(RULE_SEPARATOR, 1);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid rule [" + rule + "] of keyboard layout [" + name + "]");
+            }
+            source.append(requireChar(name, trimmed.substring(0, separator).trim()));
+            target.append(requireChar(name, trimmed.substring(separator + RULE_SEPARATOR.length()).trim()));
+        }
+        return new CustomKeyboardSwitcher(name, source.toString(), target.toString());
+    }
+
+    @Override
+    protected CharMappings getCharMappings() {
+        return charMappings;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, charMappings);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CustomKeyboardSwitcher)) {
+            return false;
+        }
+        CustomKeyboardSwitcher other = (CustomKeyboardSwitcher) obj;
+        return name.equals(other.name) && charMappings.equals(other.charMappings);
+    }
+
+    @Override
+    public String toString() {
+        return "CustomKeyboardSwitcher{" + name + "}";
+    }
+
+    private static CharMappings toCharMappings(String name, String source, String target) {
+        if (source == null || target == null || source.isEmpty()) {
+            throw new IllegalArgumentException("No mappings were provided for keyboard layout [" + name + "]");
+        }
+        if (source.length() != target.length()) {
+            throw new IllegalArgumentException("Source and target of keyboard layout [" + name + "] differ in length");
+        }
+
+        CharMappings.Builder builder = new CharMappings.Builder();
+        for (int i = 0; i < source.length(); i++) {
+            char from = requireChar(name, source.charAt(i));
+            char to = requireChar(name, target.charAt(i));
+            if (!builder.put(from, to) || !builder.put(to, from)) {
+                throw new IllegalArgumentException("Conflicting mappings of [" + from + "] in keyboard layout [" + name + "]");
+            }
+        }
+        return builder.build();
+    }
+
+    private static char requireChar(String name, String value) {
+        if (value == null || value.length() != 1) {
+            throw new IllegalArgumentException("Invalid mapping [" + value + "] of keyboard layout [" + name
+                    + "], a single char is expected");
+        }
+        return requireChar(name, value.charAt(0));
+    }
+
+    private static char requireChar(String name, char value) {
+        if (value == Character.MIN_VALUE || Character.isSurrogate(value)) {
+            throw new IllegalArgumentException("Unsupported char [" + (int) value + "] in keyboard layout [" + name + "]");
+        }
+        return value;
+    }
+
+    private static String requireName(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("No keyboard layout name was provided");
+        }
+        return name;
+    }
+}
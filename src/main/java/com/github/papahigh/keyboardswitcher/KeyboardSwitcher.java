@@ -17,7 +17,12 @@ package com.github.papahigh.keyboardswitcher;
 
 import org.apache.commons.codec.EncoderException;
 import org.apache.commons.codec.StringEncoder;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.Charset;
 
 
@@ -29,24 +34,150 @@ public abstract class KeyboardSwitcher implements StringEncoder {
 
     static String EMPTY_STRING = new String("".getBytes(Charset.defaultCharset()), Charset.defaultCharset());
 
-    protected abstract char[] getCharMappings();
+    private static final int BUFFER_SIZE = 8192;
+
+    protected abstract CharMappings getCharMappings();
+
+    /**
+     * @return name of the keyboard layout this switcher is registered with
+     */
+    public abstract String getName();
 
     public char[] switchLayout(char[] source, int offset, int length, boolean replace) {
         if (source == null || source.length == 0) {
             return new char[0];
         }
         char[] switched = replace ? source : new char[length];
-        char[] charMappings = getCharMappings();
+        CharMappings charMappings = getCharMappings();
         for (int i = offset; i < offset + length; i++) {
             final char curr = source[i];
-            if (curr > 0 && curr < charMappings.length) {
-                char mapped = charMappings[curr];
+            if (curr > 0) {
+                char mapped = charMappings.get(curr);
                 switched[i] = mapped != Character.MIN_VALUE ? mapped : curr;
             }
         }
         return switched;
     }
 
+    /**
+     * Writes switched variant of the source chars into the provided destination buffer.
+     * Chars which have no mapping are copied as is.
+     *
+     * @return true if at least one char has been switched
+     */
+    public boolean switchLayout(char[] source, int offset, int length, char[] dest, int destOffset) {
+        final CharMappings charMappings = getCharMappings();
+        final char[] ascii = charMappings.ascii;
+        boolean switched = false;
+        for (int i = 0; i < length; i++) {
+            final char curr = source[offset + i];
+            final char mapped = curr < CharMappings.ASCII ? ascii[curr] : charMappings.get(curr);
+            if (mapped != Character.MIN_VALUE) {
+                dest[destOffset + i] = mapped;
+                switched = true;
+            } else {
+                dest[destOffset + i] = curr;
+            }
+        }
+        return switched;
+    }
+
+    /**
+     * Writes switched variant of the UTF-8 encoded source bytes into the provided builder
+     * without transcoding them to UTF-16. Sequences which have no mapping are copied as is.
+     *
+     * @return true if at least one char has been switched
+     */
+    public boolean switchLayout(BytesRef source, BytesRefBuilder dest) {
+        final CharMappings charMappings = getCharMappings();
+        final int[] asciiUtf8 = charMappings.asciiUtf8;
+        final byte[] in = source.bytes;
+        final int end = source.offset + source.length;
+
+        dest.clear();
+        // any sequence is switched into at most three bytes
+        dest.grow(source.length * 3);
+        final byte[] out = dest.bytes();
+
+        boolean switched = false;
+        int upto = 0;
+        int i = source.offset;
+        while (i < end) {
+            final int b = in[i] & 0xFF;
+
+            if (b < CharMappings.ASCII) {
+                // single byte chars skip decoding and are looked up directly
+                final int mapped = asciiUtf8[b];
+                if (mapped != 0) {
+                    upto = writeUtf8(out, upto, mapped);
+                    switched = true;
+                } else {
+                    out[upto++] = (byte) b;
+                }
+                i++;
+                continue;
+            }
+
+            final int codePoint;
+            final int length;
+            if (b < 0xE0) {
+                codePoint = ((b & 0x1F) << 6) | (in[i + 1] & 0x3F);
+                length = 2;
+            } else if (b < 0xF0) {
+                codePoint = ((b & 0x0F) << 12) | ((in[i + 1] & 0x3F) << 6) | (in[i + 2] & 0x3F);
+                length = 3;
+            } else {
+                // supplementary code points are never switched
+                codePoint = -1;
+                length = 4;
+            }
+
+            final int mapped = codePoint >= 0 ? charMappings.getUtf8(codePoint) : 0;
+            if (mapped != 0) {
+                upto = writeUtf8(out, upto, mapped);
+                switched = true;
+            } else {
+                for (int k = 0; k < length; k++) {
+                    out[upto++] = in[i + k];
+                }
+            }
+            i += length;
+        }
+        dest.setLength(upto);
+        return switched;
+    }
+
+    /**
+     * Writes switched variant of the text read from the source into the destination chunk by chunk,
+     * so that texts of any length are switched with a single fixed size buffer.
+     * Neither the source nor the destination is closed.
+     */
+    public void switchLayout(Reader source, Writer dest) throws IOException {
+        final char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = source.read(buffer)) != -1) {
+            switchLayout(buffer, 0, read, buffer, 0);
+            dest.write(buffer, 0, read);
+        }
+    }
+
+    private static int writeUtf8(byte[] out, int upto, int mapped) {
+        switch (mapped >>> 24) {
+            case 1:
+                out[upto++] = (byte) mapped;
+                break;
+            case 2:
+                out[upto++] = (byte) (mapped >>> 8);
+                out[upto++] = (byte) mapped;
+                break;
+            default:
+                out[upto++] = (byte) (mapped >>> 16);
+                out[upto++] = (byte) (mapped >>> 8);
+                out[upto++] = (byte) mapped;
+        }
+        return upto;
+    }
+
     @Override
     public String encode(String source) {
         int length;
@@ -54,7 +185,8 @@ public abstract class KeyboardSwitcher implements StringEncoder {
             return EMPTY_STRING;
         }
         char[] chars = source.toCharArray();
-        return new String(switchLayout(chars, 0, length, true));
+        // switched in place, the source is returned as is when nothing is switched
+        return switchLayout(chars, 0, length, chars, 0) ? new String(chars) : source;
     }
 
     @Override
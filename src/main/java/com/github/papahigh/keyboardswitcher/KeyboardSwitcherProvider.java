@@ -15,22 +15,101 @@
  */
 package com.github.papahigh.keyboardswitcher;
 
-import java.util.EnumMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
+/**
+ * Immutable registry of the keyboard switchers. All the switchers are created once
+ * when the class is initialized, so lookups neither lock nor instantiate anything.
+ * User-defined layouts are registered when the plugin loads by replacing the whole
+ * snapshot of custom switchers.
+ */
 public class KeyboardSwitcherProvider {
 
-    private static final EnumMap<Languages, KeyboardSwitcher> cache = new EnumMap<>(Languages.class);
+    private static final KeyboardSwitcher[] switchers;
+    private static final Map<String, Languages> languages;
+
+    private static volatile Map<String, KeyboardSwitcher> customSwitchers = Collections.emptyMap();
+
+    static {
+        Languages[] values = Languages.values();
+        Map<String, Languages> names = new HashMap<>();
+        switchers = new KeyboardSwitcher[values.length];
+        for (Languages lang : values) {
+            switchers[lang.ordinal()] = lang.newInstance();
+            names.put(lang.name(), lang);
+            names.put(lang.name().toLowerCase(Locale.ROOT), lang);
+        }
+        languages = Collections.unmodifiableMap(names);
+    }
 
     public static KeyboardSwitcher provide(String language) {
         if (language == null) {
             throw new IllegalArgumentException("No language was provided");
         }
-        try {
-            Languages lang = Languages.valueOf(language.toUpperCase(Locale.ROOT));
-            return cache.computeIfAbsent(lang, Languages::newInstance);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException("Unknown language: " + language, e);
+        KeyboardSwitcher switcher = lookup(language);
+        if (switcher == null) {
+            switcher = lookup(language.toLowerCase(Locale.ROOT));
+        }
+        if (switcher == null) {
+            throw new IllegalArgumentException("Unknown language: " + language);
+        }
+        return switcher;
+    }
+
+    public static KeyboardSwitcher provide(Languages language) {
+        if (language == null) {
+            throw new IllegalArgumentException("No language was provided");
         }
+        return switchers[language.ordinal()];
+    }
+
+    /**
+     * @return true if the given name is the name of a built-in keyboard layout in any case
+     */
+    public static boolean isBuiltIn(String language) {
+        return languages.containsKey(language) || languages.containsKey(language.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Registers user-defined keyboard layouts by their names, which are matched in any case the same way
+     * as names of the built-in layouts. Layouts registered before with the same names are replaced,
+     * while the given layouts must not have names which differ only in case.
+     */
+    public static synchronized void register(Collection<? extends KeyboardSwitcher> switchers) {
+        Map<String, KeyboardSwitcher> registered = new HashMap<>(customSwitchers);
+        Map<String, String> names = new HashMap<>();
+        for (KeyboardSwitcher switcher : switchers) {
+            String name = switcher.getName();
+            String lowerCaseName = name.toLowerCase(Locale.ROOT);
+            if (isBuiltIn(name)) {
+                throw new IllegalArgumentException("Keyboard layout [" + name + "] is already defined");
+            }
+            String previous = names.put(lowerCaseName, name);
+            if (previous != null) {
+                throw new IllegalArgumentException("Keyboard layout [" + name + "] is already defined as [" + previous + "]");
+            }
+            registered.put(lowerCaseName, switcher);
+        }
+        customSwitchers = Collections.unmodifiableMap(registered);
+    }
+
+    /**
+     * Removes user-defined keyboard layouts registered with the given names.
+     */
+    static synchronized void unregister(Collection<String> names) {
+        Map<String, KeyboardSwitcher> registered = new HashMap<>(customSwitchers);
+        for (String name : names) {
+            registered.remove(name.toLowerCase(Locale.ROOT));
+        }
+        customSwitchers = Collections.unmodifiableMap(registered);
+    }
+
+    private static KeyboardSwitcher lookup(String name) {
+        Languages lang = languages.get(name);
+        return lang != null ? switchers[lang.ordinal()] : customSwitchers.get(name);
     }
 }
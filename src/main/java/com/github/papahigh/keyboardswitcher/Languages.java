@@ -15,6 +15,8 @@
  */
 package com.github.papahigh.keyboardswitcher;
 
+import java.util.function.Supplier;
+
 
 /**
  * Represents an enumeration of all supported keyboard layouts
@@ -22,26 +24,20 @@ package com.github.papahigh.keyboardswitcher;
  */
 public enum Languages {
 
-    RUSSIAN("RussianKeyboardSwitcher"),
+    RUSSIAN(RussianKeyboardSwitcher::new),
+
+    UKRAINIAN(UkrainianKeyboardSwitcher::new),
 
-    UKRAINIAN("UkrainianKeyboardSwitcher"),
+    BELARUSIAN(BelarusianKeyboardSwitcher::new);
 
-    BELARUSIAN("BelarusianKeyboardSwitcher");
-    
 
-    private final String clazzName;
+    private final Supplier<KeyboardSwitcher> factory;
 
-    Languages(String clazzName) {
-        this.clazzName = clazzName;
+    Languages(Supplier<KeyboardSwitcher> factory) {
+        this.factory = factory;
     }
 
     public KeyboardSwitcher newInstance() {
-        try {
-            Class<? extends KeyboardSwitcher> switcherClass = Class.forName("com.github.papahigh.keyboardswitcher."
-                    + clazzName).asSubclass(KeyboardSwitcher.class);
-            return switcherClass.getConstructor().newInstance();
-        } catch (Exception e) {
-            throw new IllegalArgumentException(e);
-        }
+        return factory.get();
     }
 }
@@ -23,13 +23,18 @@ import java.util.Objects;
  */
 public class RussianKeyboardSwitcher extends KeyboardSwitcher {
 
-    private static final char[] charMappings;
+    private static final CharMappings charMappings;
 
     @Override
-    protected char[] getCharMappings() {
+    protected CharMappings getCharMappings() {
         return charMappings;
     }
 
+    @Override
+    public String getName() {
+        return "russian";
+    }
+
     @Override
     public int hashCode() {
         return Objects.hashCode(RussianKeyboardSwitcher.class);
@@ -47,14 +52,9 @@ public class RussianKeyboardSwitcher extends KeyboardSwitcher {
 
     static {
 
-        charMappings = new char['ё' + 1];
-
         String eng = "qwertyuiop[]QWERTYUIOP{}asdfghjkl;'\\ASDFGHJKL:\"|zxcvbnm,.ZXCVBNM<>";
         String rus = "йцукенгшщзхъЙЦУКЕНГШЩЗХЪфывапролджэёФЫВАПРОЛДЖЭЁячсмитьбюЯЧСМИТЬБЮ";
 
-        for (int i = 0; i < eng.length(); i++) {
-            charMappings[eng.charAt(i)] = rus.charAt(i);
-            charMappings[rus.charAt(i)] = eng.charAt(i);
-        }
+        charMappings = CharMappings.of(eng, rus);
     }
 }
@@ -22,13 +22,18 @@ import java.util.Objects;
  */
 public class UkrainianKeyboardSwitcher extends KeyboardSwitcher {
 
-    private static final char[] charMappings;
+    private static final CharMappings charMappings;
 
     @Override
-    protected char[] getCharMappings() {
+    protected CharMappings getCharMappings() {
         return charMappings;
     }
 
+    @Override
+    public String getName() {
+        return "ukrainian";
+    }
+
     @Override
     public int hashCode() {
         return Objects.hashCode(RussianKeyboardSwitcher.class);
@@ -46,15 +51,10 @@ public class UkrainianKeyboardSwitcher extends KeyboardSwitcher {
 
     static {
 
-        charMappings = new char['ґ' + 1];
-
         String eng = "qwertyuiop[]QWERTYUIOP{}asdfghjkl;'ASDFGHJKL:\"\\zxcvbnm,.|ZXCVBNM<>";
         String ukr = "йцукенгшщзхїЙЦУКЕНГШЩЗХЇфівапролджєФІВАПРОЛДЖЄґячсмитьбюҐЯЧСМИТЬБЮ";
 
-        for (int i = 0; i < eng.length(); i++) {
-            charMappings[eng.charAt(i)] = ukr.charAt(i);
-            charMappings[ukr.charAt(i)] = eng.charAt(i);
-        }
+        charMappings = CharMappings.of(eng, ukr);
 
     }
 
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.papahigh.keyboardswitcher;
+
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Estimates how plausible a token is in its own keyboard layout by the pattern of vowels and consonants
+ * it consists of. Text typed with the wrong layout tends to have long runs of consonants, no vowels at all
+ * or punctuation in the middle of a word, while words of natural languages mostly alternate
+ * vowels and consonants. Only vowels of the Latin and Cyrillic scripts are known, so tokens of other
+ * scripts, e.g. of custom layouts, can't be scored.
+ */
+public final class VowelHeuristic {
+
+    /**
+     * Plausibility of tokens which mix letters of different scripts. Switching such a token
+     * never produces a single-script term, so there is no point in looking it up.
+     */
+    public static final float MIXED_SCRIPT = -1f;
+
+    /**
+     * Plausibility of tokens with letters of scripts other than Latin and Cyrillic, which the heuristic
+     * knows nothing about.
+     */
+    public static final float UNKNOWN_SCRIPT = -2f;
+
+    private static final int NONE = 0;
+    private static final int VOWEL = 1;
+    private static final int CONSONANT = 2;
+    private static final int DIGIT = 3;
+    private static final int OTHER = 4;
+
+    private static final int LATIN = 1;
+    private static final int CYRILLIC = 2;
+    private static final int OTHER_SCRIPT = 3;
+
+    private static final int MAX_RUN = 3;
+
+    private static final String LATIN_VOWELS = "aeiouy";
+    private static final String CYRILLIC_VOWELS = "аеёиоуыэюяіїє";
+
+    private VowelHeuristic() {
+    }
+
+    /**
+     * Scores the UTF-8 encoded token from 0 (implausible) to 1 (plausible). Pairs of a vowel and a consonant
+     * score 1, pairs of two vowels or two consonants score a half unless they exceed {@link #MAX_RUN}
+     * and pairs with punctuation score 0. Digits are ignored.
+     *
+     * @return plausibility of the token, {@link #MIXED_SCRIPT} or {@link #UNKNOWN_SCRIPT}
+     */
+    public static float plausibility(BytesRef utf8) {
+        final byte[] bytes = utf8.bytes;
+        final int end = utf8.offset + utf8.length;
+
+        int script = NONE;
+        int prevClass = NONE;
+        int run = 0;
+        int pairs = 0;
+        float score = 0f;
+
+        int i = utf8.offset;
+        while (i < end) {
+            final int b = bytes[i] & 0xFF;
+            final int codePoint;
+            if (b < 0x80) {
+                codePoint = b;
+                i += 1;
+            } else if (b < 0xE0) {
+                codePoint = ((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F);
+                i += 2;
+            } else if (b < 0xF0) {
+                codePoint = ((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F);
+                i += 3;
+            } else {
+                codePoint = ((b & 0x07) << 18) | ((bytes[i + 1] & 0x3F) << 12) | ((bytes[i + 2] & 0x3F) << 6)
+                        | (bytes[i + 3] & 0x3F);
+                i += 4;
+            }
+
+            final int charClass;
+            if (Character.isLetter(codePoint)) {
+                final int letterScript = script(codePoint);
+                if (script == NONE) {
+                    script = letterScript;
+                } else if (script != letterScript) {
+                    return MIXED_SCRIPT;
+                }
+                charClass = isVowel(Character.toLowerCase(codePoint), letterScript) ? VOWEL : CONSONANT;
+            } else if (Character.isDigit(codePoint)) {
+                charClass = DIGIT;
+            } else {
+                charClass = OTHER;
+            }
+
+            run = charClass == prevClass ? run + 1 : 1;
+
+            if (prevClass != NONE && prevClass != DIGIT && charClass != DIGIT) {
+                pairs++;
+                // pairs with punctuation count against the score
+                if (charClass != OTHER && prevClass != OTHER) {
+                    if (charClass != prevClass) {
+                        score += 1f;
+                    } else if (run <= MAX_RUN) {
+                        score += 0.5f;
+                    }
+                }
+            }
+            prevClass = charClass;
+        }
+
+        if (script == OTHER_SCRIPT) {
+            return UNKNOWN_SCRIPT;
+        }
+        return pairs == 0 ? 0.5f : score / pairs;
+    }
+
+    private static int script(int codePoint) {
+        if (codePoint < 0x250) {
+            return LATIN;
+        }
+        if (codePoint >= 0x400 && codePoint < 0x530) {
+            return CYRILLIC;
+        }
+        return OTHER_SCRIPT;
+    }
+
+    private static boolean isVowel(int codePoint, int script) {
+        switch (script) {
+            case LATIN:
+                return LATIN_VOWELS.indexOf(codePoint) >= 0;
+            case CYRILLIC:
+                return CYRILLIC_VOWELS.indexOf(codePoint) >= 0;
+            default:
+                return false;
+        }
+    }
+}
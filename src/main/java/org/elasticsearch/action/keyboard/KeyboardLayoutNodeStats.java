@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.action.keyboard;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.suggest.keyboard.SuggesterStats;
+
+import java.io.IOException;
+
+/**
+ * Stats of the keyboard layout plugin of a single node.
+ */
+public class KeyboardLayoutNodeStats extends BaseNodeResponse implements ToXContentFragment {
+
+    private final SuggesterStats suggesterStats;
+
+    KeyboardLayoutNodeStats(DiscoveryNode node, SuggesterStats suggesterStats) {
+        super(node);
+        this.suggesterStats = suggesterStats;
+    }
+
+    KeyboardLayoutNodeStats(StreamInput in) throws IOException {
+        super(in);
+        this.suggesterStats = new SuggesterStats(in);
+    }
+
+    public SuggesterStats getSuggesterStats() {
+        return suggesterStats;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        suggesterStats.writeTo(out);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("name", getNode().getName());
+        return suggesterStats.toXContent(builder, params);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.action.keyboard;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.List;
+
+public class KeyboardLayoutStatsResponse extends BaseNodesResponse<KeyboardLayoutNodeStats> implements ToXContentFragment {
+
+    KeyboardLayoutStatsResponse(ClusterName clusterName, List<KeyboardLayoutNodeStats> nodes,
+                                List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    KeyboardLayoutStatsResponse(StreamInput in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected List<KeyboardLayoutNodeStats> readNodesFrom(StreamInput in) throws IOException {
+        return in.readList(KeyboardLayoutNodeStats::new);
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<KeyboardLayoutNodeStats> nodes) throws IOException {
+        out.writeList(nodes);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("nodes");
+        for (KeyboardLayoutNodeStats nodeStats : getNodes()) {
+            builder.startObject(nodeStats.getNode().getId());
+            nodeStats.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
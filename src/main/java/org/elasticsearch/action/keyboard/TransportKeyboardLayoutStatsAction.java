@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.action.keyboard;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.search.suggest.keyboard.SuggesterMetrics;
+import org.elasticsearch.search.suggest.keyboard.TermFrequencyCache;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.List;
+
+public class TransportKeyboardLayoutStatsAction extends TransportNodesAction<KeyboardLayoutStatsRequest,
+        KeyboardLayoutStatsResponse, TransportKeyboardLayoutStatsAction.NodeRequest, KeyboardLayoutNodeStats> {
+
+    private final SuggesterMetrics suggesterMetrics;
+    private final TermFrequencyCache termFrequencyCache;
+
+    @Inject
+    public TransportKeyboardLayoutStatsAction(ThreadPool threadPool, ClusterService clusterService,
+                                              TransportService transportService, ActionFilters actionFilters,
+                                              SuggesterMetrics suggesterMetrics, TermFrequencyCache termFrequencyCache) {
+        super(KeyboardLayoutStatsAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                KeyboardLayoutStatsRequest::new, NodeRequest::new, ThreadPool.Names.MANAGEMENT, KeyboardLayoutNodeStats.class);
+        this.suggesterMetrics = suggesterMetrics;
+        this.termFrequencyCache = termFrequencyCache;
+    }
+
+    @Override
+    protected KeyboardLayoutStatsResponse newResponse(KeyboardLayoutStatsRequest request,
+                                                      List<KeyboardLayoutNodeStats> responses,
+                                                      List<FailedNodeException> failures) {
+        return new KeyboardLayoutStatsResponse(clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(KeyboardLayoutStatsRequest request) {
+        return new NodeRequest();
+    }
+
+    @Override
+    protected KeyboardLayoutNodeStats newNodeResponse(StreamInput in) throws IOException {
+        return new KeyboardLayoutNodeStats(in);
+    }
+
+    @Override
+    protected KeyboardLayoutNodeStats nodeOperation(NodeRequest request) {
+        return new KeyboardLayoutNodeStats(clusterService.localNode(), suggesterMetrics.stats(termFrequencyCache));
+    }
+
+    public static class NodeRequest extends BaseNodeRequest {
+
+        NodeRequest() {
+        }
+
+        NodeRequest(StreamInput in) throws IOException {
+            super(in);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.index.analysis.keyboard;
+
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcher;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.synonym.SynonymGraphFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
+
+import java.io.IOException;
+
+/**
+ * Emits switched variant of every token which has at least one char in the keyboard layout.
+ * When the original token is preserved the switched one is emitted as a synonym at the same position.
+ */
+public final class KeyboardLayoutTokenFilter extends TokenFilter {
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+    private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+    private final KeywordAttribute keywordAtt = addAttribute(KeywordAttribute.class);
+
+    private final KeyboardSwitcher switcher;
+    private final boolean preserveOriginal;
+
+    private char[] switched = new char[16];
+    private int switchedLength;
+    private State state;
+
+    public KeyboardLayoutTokenFilter(TokenStream input, KeyboardSwitcher switcher, boolean preserveOriginal) {
+        super(input);
+        this.switcher = switcher;
+        this.preserveOriginal = preserveOriginal;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (state != null) {
+            restoreState(state);
+            state = null;
+            termAtt.copyBuffer(switched, 0, switchedLength);
+            posIncAtt.setPositionIncrement(0);
+            typeAtt.setType(SynonymGraphFilter.TYPE_SYNONYM);
+            return true;
+        }
+
+        if (!input.incrementToken()) {
+            return false;
+        }
+
+        if (keywordAtt.isKeyword()) {
+            return true;
+        }
+
+        final int length = termAtt.length();
+        switched = ArrayUtil.grow(switched, length);
+        if (switcher.switchLayout(termAtt.buffer(), 0, length, switched, 0)) {
+            if (preserveOriginal) {
+                switchedLength = length;
+                state = captureState();
+            } else {
+                termAtt.copyBuffer(switched, 0, length);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        state = null;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.index.analysis.keyboard;
+
+import com.github.papahigh.keyboardswitcher.CustomKeyboardSwitcher;
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcher;
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcherProvider;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.LoggingDeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads user-defined keyboard layouts. A layout is defined either with the pair of
+ * {@code source} and {@code target} strings, or with the {@code mappings} of source
+ * chars to target chars given as an object or as a list of "source =&gt; target" rules.
+ */
+public final class KeyboardLayouts {
+
+    /**
+     * Directory within the node config which json files define keyboard layouts named after the files.
+     */
+    public static final String CONFIG_DIR = "keyboard_layouts";
+
+    private static final String SOURCE = "source";
+    private static final String TARGET = "target";
+    private static final String MAPPINGS = "mappings";
+    private static final String LANGUAGE = "language";
+    private static final String FILE_EXTENSION = ".json";
+
+    private KeyboardLayouts() {
+    }
+
+    /**
+     * Loads all the keyboard layouts defined in the json files of the provided directory.
+     */
+    public static List<KeyboardSwitcher> load(Path dir) {
+        List<KeyboardSwitcher> switchers = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return switchers;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + FILE_EXTENSION)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - FILE_EXTENSION.length());
+                switchers.add(load(name, file));
+            }
+        } catch (IOException e) {
+            throw new ElasticsearchException("failed to load keyboard layouts from [{}]", e, dir);
+        }
+        return switchers;
+    }
+
+    private static KeyboardSwitcher load(String name, Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file);
+             XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY,
+                     LoggingDeprecationHandler.INSTANCE, in)) {
+            return fromDefinition(name, parser.map());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid keyboard layout definition [" + file + "]: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates switcher of the keyboard layout defined inline in the analysis settings
+     * or provides one of the registered keyboard layouts by the {@code language} setting.
+     */
+    public static KeyboardSwitcher fromSettings(String name, Settings settings) {
+        String source = settings.get(SOURCE);
+        String target = settings.get(TARGET);
+        if (source != null || target != null) {
+            return new CustomKeyboardSwitcher(name, source, target);
+        }
+        List<String> rules = settings.getAsList(MAPPINGS);
+        if (!rules.isEmpty()) {
+            return CustomKeyboardSwitcher.parse(name, rules);
+        }
+        return KeyboardSwitcherProvider.provide(settings.get(LANGUAGE));
+    }
+
+    @SuppressWarnings("unchecked")
+    static KeyboardSwitcher fromDefinition(String name, Map<String, Object> definition) {
+        Object source = definition.get(SOURCE);
+        Object target = definition.get(TARGET);
+        if (source != null || target != null) {
+            return new CustomKeyboardSwitcher(name, asString(source), asString(target));
+        }
+        Object mappings = definition.get(MAPPINGS);
+        if (mappings instanceof Map) {
+            Map<String, String> chars = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> mapping : ((Map<String, Object>) mappings).entrySet()) {
+                chars.put(mapping.getKey(), asString(mapping.getValue()));
+            }
+            return new CustomKeyboardSwitcher(name, chars);
+        }
+        if (mappings instanceof List) {
+            List<String> rules = new ArrayList<>();
+            for (Object rule : (List<Object>) mappings) {
+                rules.add(asString(rule));
+            }
+            return CustomKeyboardSwitcher.parse(name, rules);
+        }
+        throw new IllegalArgumentException("No mappings were provided for keyboard layout [" + name + "]");
+    }
+
+    private static String asString(Object value) {
+        return value == null ? null : value.toString();
+    }
+}
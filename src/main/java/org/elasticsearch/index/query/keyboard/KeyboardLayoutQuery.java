@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.index.query.keyboard;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SynonymQuery;
+import org.apache.lucene.search.TermQuery;
+import org.elasticsearch.search.suggest.keyboard.KeyboardLayoutSuggester;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Matches the original and the switched terms of the query text. Rewrites every token into either a
+ * {@link SynonymQuery} of both terms or the single term with the higher document frequency.
+ * The switched term is only used if its frequency is within the configured thresholds.
+ */
+public final class KeyboardLayoutQuery extends Query {
+
+    private final Term[] originalTerms;
+    private final Term[] switchedTerms;
+    private final boolean best;
+    private final BooleanClause.Occur occur;
+    private final double minFreq;
+    private final double maxFreq;
+
+    /**
+     * @param switchedTerms switched variants of the original terms, null if the term has no switched variant
+     */
+    KeyboardLayoutQuery(Term[] originalTerms, Term[] switchedTerms, boolean best, BooleanClause.Occur occur,
+                        double minFreq, double maxFreq) {
+        assert originalTerms.length == switchedTerms.length;
+        this.originalTerms = originalTerms;
+        this.switchedTerms = switchedTerms;
+        this.best = best;
+        this.occur = occur;
+        this.minFreq = minFreq;
+        this.maxFreq = maxFreq;
+    }
+
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException {
+        final double maxDoc = reader.maxDoc();
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (int i = 0; i < originalTerms.length; i++) {
+            builder.add(rewrite(reader, maxDoc, originalTerms[i], switchedTerms[i]), occur);
+        }
+        return builder.build();
+    }
+
+    private Query rewrite(IndexReader reader, double maxDoc, Term original, Term switched) throws IOException {
+        if (switched == null) {
+            return new TermQuery(original);
+        }
+        int switchedFreq = reader.docFreq(switched);
+        if (!KeyboardLayoutSuggester.isNormalFreq(minFreq, maxFreq, maxDoc, switchedFreq)) {
+            return new TermQuery(original);
+        }
+        if (best) {
+            return new TermQuery(switchedFreq > reader.docFreq(original) ? switched : original);
+        }
+        return new SynonymQuery.Builder(original.field())
+                .addTerm(original)
+                .addTerm(switched)
+                .build();
+    }
+
+    @Override
+    public String toString(String field) {
+        StringBuilder builder = new StringBuilder("keyboard_layout(");
+        for (int i = 0; i < originalTerms.length; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(occur).append(originalTerms[i].toString());
+            if (switchedTerms[i] != null) {
+                builder.append('|').append(switchedTerms[i].text());
+            }
+        }
+        return builder.append(')').toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!sameClassAs(o)) {
+            return false;
+        }
+        KeyboardLayoutQuery that = (KeyboardLayoutQuery) o;
+        return best == that.best &&
+                occur == that.occur &&
+                Double.compare(minFreq, that.minFreq) == 0 &&
+                Double.compare(maxFreq, that.maxFreq) == 0 &&
+                Arrays.equals(originalTerms, that.originalTerms) &&
+                Arrays.equals(switchedTerms, that.switchedTerms);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(classHash(), best, occur, minFreq, maxFreq,
+                Arrays.hashCode(originalTerms), Arrays.hashCode(switchedTerms));
+    }
+}
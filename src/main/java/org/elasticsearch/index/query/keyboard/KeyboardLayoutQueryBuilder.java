@@ -0,0 +1,308 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.index.query.keyboard;
+
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcher;
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcherProvider;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.query.QueryShardException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+
+public final class KeyboardLayoutQueryBuilder extends AbstractQueryBuilder<KeyboardLayoutQueryBuilder> {
+
+    public static final String NAME = "keyboard_layout";
+
+    public static final String MODE_SYNONYM = "synonym";
+    public static final String MODE_BEST = "best";
+
+    private static final ParseField FIELD_FIELD = new ParseField("field");
+    private static final ParseField QUERY_FIELD = new ParseField("query");
+    private static final ParseField LANGUAGE_FIELD = new ParseField("language");
+    private static final ParseField ANALYZER_FIELD = new ParseField("analyzer");
+    private static final ParseField MODE_FIELD = new ParseField("mode");
+    private static final ParseField OPERATOR_FIELD = new ParseField("operator");
+    private static final ParseField MAX_FREQ_FIELD = new ParseField("max_freq");
+    private static final ParseField MIN_FREQ_FIELD = new ParseField("min_freq");
+
+    private final String fieldName;
+    private final String query;
+    private final KeyboardSwitcher switcher;
+    private String analyzer;
+    private String mode = MODE_SYNONYM;
+    private Operator operator = Operator.OR;
+    private double minFreq = 0d;
+    private double maxFreq = -1d;
+
+    public KeyboardLayoutQueryBuilder(String fieldName, String query, String language) {
+        if (fieldName == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires field name");
+        }
+        if (query == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires query text");
+        }
+        this.fieldName = fieldName;
+        this.query = query;
+        this.switcher = KeyboardSwitcherProvider.provide(language);
+    }
+
+    public KeyboardLayoutQueryBuilder(StreamInput in) throws IOException {
+        super(in);
+        fieldName = in.readString();
+        query = in.readString();
+        switcher = KeyboardSwitcherProvider.provide(in.readString());
+        analyzer = in.readOptionalString();
+        mode = in.readString();
+        operator = Operator.readFromStream(in);
+        minFreq = in.readDouble();
+        maxFreq = in.readDouble();
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeString(fieldName);
+        out.writeString(query);
+        out.writeString(switcher.getName());
+        out.writeOptionalString(analyzer);
+        out.writeString(mode);
+        operator.writeTo(out);
+        out.writeDouble(minFreq);
+        out.writeDouble(maxFreq);
+    }
+
+    public KeyboardLayoutQueryBuilder analyzer(String analyzer) {
+        this.analyzer = analyzer;
+        return this;
+    }
+
+    public KeyboardLayoutQueryBuilder mode(String mode) {
+        String normalized = mode.toLowerCase(Locale.ROOT);
+        if (!MODE_SYNONYM.equals(normalized) && !MODE_BEST.equals(normalized)) {
+            throw new IllegalArgumentException("[" + NAME + "] unknown mode [" + mode + "]");
+        }
+        this.mode = normalized;
+        return this;
+    }
+
+    public KeyboardLayoutQueryBuilder operator(Operator operator) {
+        this.operator = Objects.requireNonNull(operator);
+        return this;
+    }
+
+    public KeyboardLayoutQueryBuilder minFreq(double minFreq) {
+        if (minFreq < 0.0d) {
+            throw new IllegalArgumentException("minFreq must be positive");
+        }
+        if (minFreq > 1.0d && minFreq != Math.floor(minFreq)) {
+            throw new IllegalArgumentException("if minFreq is greater than 1, it must not be a fraction");
+        }
+        this.minFreq = minFreq;
+        return this;
+    }
+
+    public KeyboardLayoutQueryBuilder maxFreq(double maxFreq) {
+        if (maxFreq < 0.0d) {
+            throw new IllegalArgumentException("maxFreq must be positive");
+        }
+        if (maxFreq > 1.0d && maxFreq != Math.floor(maxFreq)) {
+            throw new IllegalArgumentException("if maxFreq is greater than 1, it must not be a fraction");
+        }
+        this.maxFreq = maxFreq;
+        return this;
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(NAME);
+        builder.field(FIELD_FIELD.getPreferredName(), fieldName);
+        builder.field(QUERY_FIELD.getPreferredName(), query);
+        builder.field(LANGUAGE_FIELD.getPreferredName(), switcher.getName());
+        if (analyzer != null) {
+            builder.field(ANALYZER_FIELD.getPreferredName(), analyzer);
+        }
+        builder.field(MODE_FIELD.getPreferredName(), mode);
+        builder.field(OPERATOR_FIELD.getPreferredName(), operator.toString());
+        builder.field(MIN_FREQ_FIELD.getPreferredName(), minFreq);
+        builder.field(MAX_FREQ_FIELD.getPreferredName(), maxFreq);
+        printBoostAndQueryName(builder);
+        builder.endObject();
+    }
+
+    @Override
+    protected Query doToQuery(QueryShardContext context) throws IOException {
+        MappedFieldType fieldType = context.fieldMapper(fieldName);
+        if (fieldType == null) {
+            return new MatchNoDocsQuery("unmapped field [" + fieldName + "]");
+        }
+
+        Analyzer searchAnalyzer;
+        if (analyzer != null) {
+            searchAnalyzer = context.getMapperService().getIndexAnalyzers().get(analyzer);
+            if (searchAnalyzer == null) {
+                throw new QueryShardException(context, "[" + NAME + "] analyzer [" + analyzer + "] not found");
+            }
+        } else {
+            searchAnalyzer = context.getSearchAnalyzer(fieldType);
+        }
+
+        BytesRefBuilder switched = new BytesRefBuilder();
+        List<Term> originalTerms = new ArrayList<>();
+        List<Term> switchedTerms = new ArrayList<>();
+
+        try (TokenStream tokenStream = searchAnalyzer.tokenStream(fieldType.name(), query)) {
+            TermToBytesRefAttribute termAtt = tokenStream.addAttribute(TermToBytesRefAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                BytesRef term = termAtt.getBytesRef();
+                originalTerms.add(new Term(fieldType.name(), BytesRef.deepCopyOf(term)));
+                switchedTerms.add(switcher.switchLayout(term, switched)
+                        ? new Term(fieldType.name(), switched.toBytesRef())
+                        : null);
+            }
+            tokenStream.end();
+        }
+
+        if (originalTerms.isEmpty()) {
+            return new MatchNoDocsQuery("empty [" + NAME + "] query text");
+        }
+
+        return new KeyboardLayoutQuery(originalTerms.toArray(new Term[0]), switchedTerms.toArray(new Term[0]),
+                MODE_BEST.equals(mode), operator.toBooleanClauseOccur(), minFreq, maxFreq);
+    }
+
+    @Override
+    protected boolean doEquals(KeyboardLayoutQueryBuilder other) {
+        return Objects.equals(fieldName, other.fieldName) &&
+                Objects.equals(query, other.query) &&
+                Objects.equals(switcher, other.switcher) &&
+                Objects.equals(analyzer, other.analyzer) &&
+                Objects.equals(mode, other.mode) &&
+                Objects.equals(operator, other.operator) &&
+                Objects.equals(minFreq, other.minFreq) &&
+                Objects.equals(maxFreq, other.maxFreq);
+    }
+
+    @Override
+    protected int doHashCode() {
+        return Objects.hash(fieldName, query, switcher, analyzer, mode, operator, minFreq, maxFreq);
+    }
+
+    @Override
+    public String getWriteableName() {
+        return NAME;
+    }
+
+    public static KeyboardLayoutQueryBuilder fromXContent(XContentParser parser) throws IOException {
+
+        String fieldName = null;
+        String query = null;
+        String language = null;
+        String analyzer = null;
+        String mode = null;
+        Operator operator = null;
+        Double minFreq = null;
+        Double maxFreq = null;
+        String queryName = null;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+
+        XContentParser.Token token;
+        String currentFieldName = "";
+
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if (FIELD_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    fieldName = parser.text();
+                } else if (QUERY_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    query = parser.text();
+                } else if (LANGUAGE_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    language = parser.text();
+                } else if (ANALYZER_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    analyzer = parser.text();
+                } else if (MODE_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    mode = parser.text();
+                } else if (OPERATOR_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    operator = Operator.fromString(parser.text());
+                } else if (MIN_FREQ_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    minFreq = parser.doubleValue();
+                } else if (MAX_FREQ_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    maxFreq = parser.doubleValue();
+                } else if (AbstractQueryBuilder.BOOST_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    boost = parser.floatValue();
+                } else if (AbstractQueryBuilder.NAME_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    queryName = parser.text();
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(),
+                            "[" + NAME + "] query doesn't support field [" + currentFieldName + "]");
+                }
+            } else {
+                throw new ParsingException(parser.getTokenLocation(),
+                        "[" + NAME + "] query parsing failed on [" + currentFieldName + "]");
+            }
+        }
+
+        if (fieldName == null) {
+            throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires field name");
+        }
+        if (query == null) {
+            throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires query text");
+        }
+        if (language == null) {
+            throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires language");
+        }
+
+        KeyboardLayoutQueryBuilder builder = new KeyboardLayoutQueryBuilder(fieldName, query, language);
+        builder.analyzer(analyzer);
+        if (mode != null) {
+            builder.mode(mode);
+        }
+        if (operator != null) {
+            builder.operator(operator);
+        }
+        if (minFreq != null) {
+            builder.minFreq(minFreq);
+        }
+        if (maxFreq != null) {
+            builder.maxFreq(maxFreq);
+        }
+        builder.queryName(queryName);
+        builder.boost(boost);
+        return builder;
+    }
+}
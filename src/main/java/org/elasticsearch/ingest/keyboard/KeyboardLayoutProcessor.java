@@ -0,0 +1,232 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.ingest.keyboard;
+
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcher;
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcherProvider;
+import com.github.papahigh.keyboardswitcher.VowelHeuristic;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.elasticsearch.ingest.AbstractProcessor;
+import org.elasticsearch.ingest.ConfigurationUtils;
+import org.elasticsearch.ingest.IngestDocument;
+import org.elasticsearch.ingest.Processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a copy of the string field (or of every string of the list field) with the words typed
+ * in the wrong keyboard layout switched. Unless layout detection is disabled, a word is switched only
+ * when its switched variant looks more like a word of a natural language than the word itself
+ * and is at least as plausible as the threshold.
+ */
+public final class KeyboardLayoutProcessor extends AbstractProcessor {
+
+    public static final String TYPE = "keyboard_layout";
+
+    private final String field;
+    private final String targetField;
+    private final List<KeyboardSwitcher> switchers;
+    private final boolean detectLayout;
+    private final float plausibilityThreshold;
+    private final boolean ignoreMissing;
+
+    KeyboardLayoutProcessor(String tag, String field, String targetField, List<KeyboardSwitcher> switchers,
+                            boolean detectLayout, float plausibilityThreshold, boolean ignoreMissing) {
+        super(tag);
+        this.field = field;
+        this.targetField = targetField;
+        this.switchers = switchers;
+        this.detectLayout = detectLayout;
+        this.plausibilityThreshold = plausibilityThreshold;
+        this.ignoreMissing = ignoreMissing;
+    }
+
+    @Override
+    public IngestDocument execute(IngestDocument document) {
+        Object value = document.getFieldValue(field, Object.class, ignoreMissing);
+        if (value == null && ignoreMissing) {
+            return document;
+        } else if (value == null) {
+            throw new IllegalArgumentException("field [" + field + "] is null, cannot switch keyboard layout.");
+        }
+
+        WordSwitcher wordSwitcher = new WordSwitcher();
+        if (value instanceof String) {
+            document.setFieldValue(targetField, wordSwitcher.switchLayout((String) value));
+        } else if (value instanceof List) {
+            List<?> values = (List<?>) value;
+            List<String> switched = new ArrayList<>(values.size());
+            for (Object item : values) {
+                if (!(item instanceof String)) {
+                    throw new IllegalArgumentException("value [" + item + "] of field [" + field
+                            + "] cannot be cast to [java.lang.String]");
+                }
+                switched.add(wordSwitcher.switchLayout((String) item));
+            }
+            document.setFieldValue(targetField, switched);
+        } else {
+            throw new IllegalArgumentException("field [" + field + "] of type [" + value.getClass().getName()
+                    + "] cannot be cast to [java.lang.String]");
+        }
+        return document;
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    String getField() {
+        return field;
+    }
+
+    String getTargetField() {
+        return targetField;
+    }
+
+    List<KeyboardSwitcher> getSwitchers() {
+        return switchers;
+    }
+
+    /**
+     * Switches whitespace separated words of the texts of a single document,
+     * buffers are shared by all the words.
+     */
+    private final class WordSwitcher {
+
+        private final BytesRefBuilder originalBytes = new BytesRefBuilder();
+        private final BytesRefBuilder switchedBytes = new BytesRefBuilder();
+        private char[] switchedChars = new char[0];
+
+        String switchLayout(String text) {
+            final char[] chars = text.toCharArray();
+            if (switchedChars.length < chars.length) {
+                switchedChars = new char[chars.length];
+            }
+
+            boolean switched = false;
+            int start = 0;
+            while (start < chars.length) {
+                if (Character.isWhitespace(chars[start])) {
+                    start++;
+                    continue;
+                }
+                int end = start + 1;
+                while (end < chars.length && !Character.isWhitespace(chars[end])) {
+                    end++;
+                }
+                switched |= switchWord(chars, start, end - start);
+                start = end;
+            }
+            return switched ? new String(chars) : text;
+        }
+
+        /**
+         * Switches the word in place with the most plausible of the switchers.
+         */
+        private boolean switchWord(char[] chars, int offset, int length) {
+            if (!detectLayout) {
+                return switchers.get(0).switchLayout(chars, offset, length, chars, offset);
+            }
+
+            originalBytes.copyChars(chars, offset, length);
+            float plausibility = VowelHeuristic.plausibility(originalBytes.get());
+            if (plausibility == VowelHeuristic.MIXED_SCRIPT || plausibility == VowelHeuristic.UNKNOWN_SCRIPT) {
+                return false;
+            }
+
+            KeyboardSwitcher best = null;
+            // the switched word has to look like a word itself and more so than the original one,
+            // which words switched into the scripts the heuristic doesn't know never do
+            float bestPlausibility = Math.max(plausibility, Math.nextDown(plausibilityThreshold));
+            for (KeyboardSwitcher switcher : switchers) {
+                if (switcher.switchLayout(chars, offset, length, switchedChars, 0)) {
+                    switchedBytes.copyChars(switchedChars, 0, length);
+                    float switchedPlausibility = VowelHeuristic.plausibility(switchedBytes.get());
+                    if (switchedPlausibility > bestPlausibility) {
+                        best = switcher;
+                        bestPlausibility = switchedPlausibility;
+                    }
+                }
+            }
+            return best != null && best.switchLayout(chars, offset, length, chars, offset);
+        }
+    }
+
+    public static final class Factory implements Processor.Factory {
+
+        @Override
+        public KeyboardLayoutProcessor create(Map<String, Processor.Factory> registry, String tag,
+                                              Map<String, Object> config) {
+            String field = ConfigurationUtils.readStringProperty(TYPE, tag, config, "field");
+            String targetField = ConfigurationUtils.readStringProperty(TYPE, tag, config, "target_field", field);
+            List<KeyboardSwitcher> switchers = readSwitchers(tag, config);
+            boolean detectLayout = ConfigurationUtils.readBooleanProperty(TYPE, tag, config, "detect_layout", true);
+            float plausibilityThreshold = readPlausibilityThreshold(tag, config);
+            boolean ignoreMissing = ConfigurationUtils.readBooleanProperty(TYPE, tag, config, "ignore_missing", false);
+
+            if (!detectLayout && switchers.size() > 1) {
+                throw ConfigurationUtils.newConfigurationException(TYPE, tag, "language",
+                        "only a single language is allowed when [detect_layout] is disabled");
+            }
+            return new KeyboardLayoutProcessor(tag, field, targetField, switchers,
+                    detectLayout, plausibilityThreshold, ignoreMissing);
+        }
+
+        private static List<KeyboardSwitcher> readSwitchers(String tag, Map<String, Object> config) {
+            Object language = ConfigurationUtils.readObject(TYPE, tag, config, "language");
+            List<?> languages = language instanceof List ? (List<?>) language : Collections.singletonList(language);
+            if (languages.isEmpty()) {
+                throw ConfigurationUtils.newConfigurationException(TYPE, tag, "language", "No language was provided");
+            }
+            List<KeyboardSwitcher> switchers = new ArrayList<>(languages.size());
+            for (Object name : languages) {
+                if (!(name instanceof String)) {
+                    throw ConfigurationUtils.newConfigurationException(TYPE, tag, "language",
+                            "property isn't a string or a list of strings");
+                }
+                try {
+                    switchers.add(KeyboardSwitcherProvider.provide((String) name));
+                } catch (IllegalArgumentException e) {
+                    throw ConfigurationUtils.newConfigurationException(TYPE, tag, "language", e.getMessage());
+                }
+            }
+            return switchers;
+        }
+
+        private static float readPlausibilityThreshold(String tag, Map<String, Object> config) {
+            Object value = config.remove("plausibility_threshold");
+            if (value == null) {
+                return 0.5f;
+            }
+            final float threshold;
+            try {
+                threshold = value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(value.toString());
+            } catch (NumberFormatException e) {
+                throw ConfigurationUtils.newConfigurationException(TYPE, tag, "plausibility_threshold",
+                        "property isn't a number");
+            }
+            if (threshold < 0f || threshold > 1f) {
+                throw ConfigurationUtils.newConfigurationException(TYPE, tag, "plausibility_threshold",
+                        "must be between 0 and 1");
+            }
+            return threshold;
+        }
+    }
+}
@@ -15,26 +15,92 @@
  */
 package org.elasticsearch.plugin;
 
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcherProvider;
 import org.apache.lucene.analysis.Analyzer;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.keyboard.KeyboardLayoutStatsAction;
+import org.elasticsearch.action.keyboard.TransportKeyboardLayoutStatsAction;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.IndexScopedSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.env.NodeEnvironment;
 import org.elasticsearch.index.analysis.AnalyzerProvider;
+import org.elasticsearch.index.analysis.TokenFilterFactory;
 import org.elasticsearch.index.analysis.TokenizerFactory;
 import org.elasticsearch.index.analysis.keyboard.KeyboardAnalyzerProvider;
+import org.elasticsearch.index.analysis.keyboard.KeyboardLayoutTokenFilterFactory;
 import org.elasticsearch.index.analysis.keyboard.KeyboardLayoutTokenizerFactory;
+import org.elasticsearch.index.analysis.keyboard.KeyboardLayouts;
+import org.elasticsearch.index.query.keyboard.KeyboardLayoutQueryBuilder;
 import org.elasticsearch.indices.analysis.AnalysisModule;
+import org.elasticsearch.ingest.Processor;
+import org.elasticsearch.ingest.keyboard.KeyboardLayoutProcessor;
+import org.elasticsearch.plugins.ActionPlugin;
 import org.elasticsearch.plugins.AnalysisPlugin;
+import org.elasticsearch.plugins.IngestPlugin;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.plugins.SearchPlugin;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestHandler;
+import org.elasticsearch.rest.action.keyboard.RestKeyboardLayoutConvertAction;
+import org.elasticsearch.rest.action.keyboard.RestKeyboardLayoutStatsAction;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.suggest.keyboard.KeyboardLayoutSuggester;
 import org.elasticsearch.search.suggest.keyboard.KeyboardLayoutSuggestion;
 import org.elasticsearch.search.suggest.keyboard.KeyboardLayoutSuggestionBuilder;
+import org.elasticsearch.search.suggest.keyboard.SuggesterMetrics;
+import org.elasticsearch.search.suggest.keyboard.TermFrequencyCache;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.watcher.ResourceWatcherService;
 
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import static java.util.Collections.singletonMap;
 
 
-public class KeyboardLayoutPlugin extends Plugin implements SearchPlugin, AnalysisPlugin {
+public class KeyboardLayoutPlugin extends Plugin implements SearchPlugin, AnalysisPlugin, ActionPlugin, IngestPlugin {
+
+    private final TermFrequencyCache termFrequencyCache;
+    private final SuggesterMetrics suggesterMetrics;
+
+    public KeyboardLayoutPlugin(Settings settings, Path configPath) {
+        if (configPath != null) {
+            KeyboardSwitcherProvider.register(KeyboardLayouts.load(configPath.resolve(KeyboardLayouts.CONFIG_DIR)));
+        }
+        this.termFrequencyCache = new TermFrequencyCache(settings);
+        KeyboardLayoutSuggester.setTermFrequencyCache(termFrequencyCache);
+        this.suggesterMetrics = new SuggesterMetrics();
+        KeyboardLayoutSuggester.setMetrics(suggesterMetrics);
+    }
+
+    @Override
+    public Collection<Object> createComponents(Client client, ClusterService clusterService, ThreadPool threadPool,
+                                               ResourceWatcherService resourceWatcherService, ScriptService scriptService,
+                                               NamedXContentRegistry xContentRegistry, Environment environment,
+                                               NodeEnvironment nodeEnvironment, NamedWriteableRegistry namedWriteableRegistry) {
+        return Arrays.asList(termFrequencyCache, suggesterMetrics);
+    }
+
+    @Override
+    public List<Setting<?>> getSettings() {
+        return Collections.singletonList(TermFrequencyCache.CACHE_SIZE_SETTING);
+    }
 
     @Override
     public List<SearchPlugin.SuggesterSpec<?>> getSuggesters() {
@@ -48,6 +114,36 @@ public class KeyboardLayoutPlugin extends Plugin implements SearchPlugin, Analys
         );
     }
 
+    @Override
+    public List<QuerySpec<?>> getQueries() {
+        return Collections.singletonList(
+                new QuerySpec<>(
+                        KeyboardLayoutQueryBuilder.NAME,
+                        KeyboardLayoutQueryBuilder::new,
+                        KeyboardLayoutQueryBuilder::fromXContent
+                )
+        );
+    }
+
+    @Override
+    public List<RestHandler> getRestHandlers(Settings settings, RestController restController,
+                                             ClusterSettings clusterSettings, IndexScopedSettings indexScopedSettings,
+                                             SettingsFilter settingsFilter,
+                                             IndexNameExpressionResolver indexNameExpressionResolver,
+                                             Supplier<DiscoveryNodes> nodesInCluster) {
+        return Arrays.asList(
+                new RestKeyboardLayoutConvertAction(restController),
+                new RestKeyboardLayoutStatsAction(restController)
+        );
+    }
+
+    @Override
+    public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
+        return Collections.singletonList(
+                new ActionHandler<>(KeyboardLayoutStatsAction.INSTANCE, TransportKeyboardLayoutStatsAction.class)
+        );
+    }
+
     @Override
     public Map<String, AnalysisModule.AnalysisProvider<AnalyzerProvider<? extends Analyzer>>> getAnalyzers() {
         return singletonMap("keyboard_analyzer", KeyboardAnalyzerProvider::new);
@@ -57,4 +153,14 @@ public class KeyboardLayoutPlugin extends Plugin implements SearchPlugin, Analys
     public Map<String, AnalysisModule.AnalysisProvider<TokenizerFactory>> getTokenizers() {
         return singletonMap("keyboard_tokenizer", KeyboardLayoutTokenizerFactory::new);
     }
+
+    @Override
+    public Map<String, AnalysisModule.AnalysisProvider<TokenFilterFactory>> getTokenFilters() {
+        return singletonMap("keyboard_layout", KeyboardLayoutTokenFilterFactory::new);
+    }
+
+    @Override
+    public Map<String, Processor.Factory> getProcessors(Processor.Parameters parameters) {
+        return singletonMap(KeyboardLayoutProcessor.TYPE, new KeyboardLayoutProcessor.Factory());
+    }
 }
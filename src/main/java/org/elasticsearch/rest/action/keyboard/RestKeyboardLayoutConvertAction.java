@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.rest.action.keyboard;
+
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcher;
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcherProvider;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.LoggingDeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Switches keyboard layout of the texts given as newline delimited json objects. Every line of the response
+ * is the object of the same line of the request with its text field switched, other fields are copied as is.
+ */
+public class RestKeyboardLayoutConvertAction extends BaseRestHandler {
+
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+    private static final byte LINE_SEPARATOR = '\n';
+    private static final String DEFAULT_FIELD = "text";
+
+    public RestKeyboardLayoutConvertAction(RestController controller) {
+        controller.registerHandler(RestRequest.Method.POST, "/_keyboard_layout/_convert", this);
+    }
+
+    @Override
+    public String getName() {
+        return "keyboard_layout_convert_action";
+    }
+
+    @Override
+    public boolean supportsContentStream() {
+        return true;
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        KeyboardSwitcher switcher = KeyboardSwitcherProvider.provide(request.param("language"));
+        String field = request.param("field", DEFAULT_FIELD);
+        BytesReference content = request.requiredContent();
+        return channel -> {
+            BytesStreamOutput out = channel.bytesOutput();
+            // builders of the lines close the stream they write into, the channel stream must stay open
+            new Converter(switcher, field).convert(content, Streams.flushOnCloseStream(out));
+            channel.sendResponse(new BytesRestResponse(RestStatus.OK, NDJSON_CONTENT_TYPE, out.bytes()));
+        };
+    }
+
+    /**
+     * Converts the lines one by one reusing the same buffers for all of them.
+     */
+    static final class Converter {
+
+        private final KeyboardSwitcher switcher;
+        private final String field;
+        private final CharsRefBuilder switchedChars = new CharsRefBuilder();
+        private final BytesRefBuilder switchedBytes = new BytesRefBuilder();
+
+        Converter(KeyboardSwitcher switcher, String field) {
+            this.switcher = switcher;
+            this.field = field;
+        }
+
+        void convert(BytesReference data, OutputStream out) throws IOException {
+            final int length = data.length();
+            int line = 0;
+            int from = 0;
+            while (from < length) {
+                int next = data.indexOf(LINE_SEPARATOR, from);
+                if (next < 0) {
+                    next = length;
+                }
+                line++;
+                if (next > from) {
+                    convertLine(data.slice(from, next - from), line, out);
+                }
+                from = next + 1;
+            }
+        }
+
+        private void convertLine(BytesReference data, int line, OutputStream out) throws IOException {
+            try (XContentParser parser = XContentHelper.createParser(NamedXContentRegistry.EMPTY,
+                    LoggingDeprecationHandler.INSTANCE, data, XContentType.JSON);
+                 XContentBuilder builder = XContentFactory.jsonBuilder(out)) {
+
+                if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+                    throw new IllegalArgumentException("Malformed line [" + line + "], expected an object");
+                }
+
+                builder.startObject();
+                XContentParser.Token token;
+                while ((token = parser.nextToken()) == XContentParser.Token.FIELD_NAME) {
+                    String name = parser.currentName();
+                    token = parser.nextToken();
+                    builder.field(name);
+                    if (field.equals(name) && token == XContentParser.Token.VALUE_STRING) {
+                        switchText(parser, builder);
+                    } else {
+                        builder.copyCurrentStructure(parser);
+                    }
+                }
+                if (token != XContentParser.Token.END_OBJECT) {
+                    throw new IllegalArgumentException("Malformed line [" + line + "], expected the end of object");
+                }
+                builder.endObject();
+            }
+            out.write(LINE_SEPARATOR);
+        }
+
+        private void switchText(XContentParser parser, XContentBuilder builder) throws IOException {
+            final int length = parser.textLength();
+            switchedChars.grow(length);
+            switcher.switchLayout(parser.textCharacters(), parser.textOffset(), length, switchedChars.chars(), 0);
+            switchedBytes.copyChars(switchedChars.chars(), 0, length);
+            builder.utf8Value(switchedBytes.bytes(), 0, switchedBytes.length());
+        }
+    }
+}
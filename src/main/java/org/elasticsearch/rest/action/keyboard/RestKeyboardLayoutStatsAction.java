@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.rest.action.keyboard;
+
+import org.elasticsearch.action.keyboard.KeyboardLayoutStatsAction;
+import org.elasticsearch.action.keyboard.KeyboardLayoutStatsRequest;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestActions;
+
+/**
+ * Returns node level stats of the keyboard layout suggester and its frequency cache.
+ */
+public class RestKeyboardLayoutStatsAction extends BaseRestHandler {
+
+    public RestKeyboardLayoutStatsAction(RestController controller) {
+        controller.registerHandler(RestRequest.Method.GET, "/_nodes/keyboard_layout/stats", this);
+        controller.registerHandler(RestRequest.Method.GET, "/_nodes/{nodeId}/keyboard_layout/stats", this);
+    }
+
+    @Override
+    public String getName() {
+        return "keyboard_layout_stats_action";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) {
+        String[] nodesIds = Strings.splitStringByCommaToArray(request.param("nodeId"));
+        KeyboardLayoutStatsRequest statsRequest = new KeyboardLayoutStatsRequest(nodesIds);
+        statsRequest.timeout(request.param("timeout"));
+        return channel -> client.execute(KeyboardLayoutStatsAction.INSTANCE, statsRequest,
+                new RestActions.NodesResponseRestListener<>(channel));
+    }
+}
@@ -16,15 +16,23 @@
 package org.elasticsearch.search.suggest.keyboard;
 
 import com.github.papahigh.keyboardswitcher.KeyboardSwitcher;
+import com.github.papahigh.keyboardswitcher.VowelHeuristic;
+import org.apache.lucene.analysis.CharacterUtils;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.BytesRefHash;
 import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.text.Text;
+import org.elasticsearch.index.query.QueryShardContext;
 import org.elasticsearch.search.suggest.Suggest;
 import org.elasticsearch.search.suggest.Suggester;
 import org.elasticsearch.search.suggest.SuggestionSearchContext;
@@ -32,24 +40,60 @@ import org.elasticsearch.search.suggest.phrase.DirectCandidateGenerator;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
 
 
 public class KeyboardLayoutSuggester extends Suggester<KeyboardLayoutSuggestionContext> {
 
     static KeyboardLayoutSuggester INSTANCE = new KeyboardLayoutSuggester();
 
+    /**
+     * Separator of the shingle filter tokens, the default one is expected.
+     */
+    private static final char SHINGLE_SEPARATOR = ' ';
+
+    private volatile TermFrequencyCache termFrequencyCache = TermFrequencyCache.DISABLED;
+    private volatile SuggesterMetrics metrics = new SuggesterMetrics();
+
     private KeyboardLayoutSuggester() {
     }
 
+    /**
+     * Sets node level cache of the suggest candidate frequencies.
+     */
+    public static void setTermFrequencyCache(TermFrequencyCache termFrequencyCache) {
+        INSTANCE.termFrequencyCache = termFrequencyCache;
+    }
+
+    /**
+     * Sets node level counters the suggest requests are reported to.
+     */
+    public static void setMetrics(SuggesterMetrics metrics) {
+        INSTANCE.metrics = metrics;
+    }
+
     @Override
     protected KeyboardLayoutSuggestion innerExecute(String name, KeyboardLayoutSuggestionContext suggestion,
                                                     IndexSearcher searcher, CharsRefBuilder spare) throws IOException {
         KeyboardLayoutSuggestion response = new KeyboardLayoutSuggestion(name, suggestion.getSize());
-        SuggestionsGenerator generator = new SuggestionsGenerator(searcher.getIndexReader(), response, suggestion);
+        SuggestionsGenerator generator = new SuggestionsGenerator(searcher.getIndexReader(), termFrequencyCache,
+                response, suggestion);
+        long startTime = System.nanoTime();
         DirectCandidateGenerator.analyze(suggestion.getAnalyzer(), suggestion.getText(), suggestion.getField(), generator, spare);
+        long analyzedTime = System.nanoTime();
+        generator.finish();
+        long finishedTime = System.nanoTime();
+
+        // switching happens while the text is analyzed and is reported apart from the analysis
+        long analyzeNanos = Math.max(0, analyzedTime - startTime - generator.switchNanos);
+        metrics.onSuggest(generator, analyzeNanos);
+        if (suggestion.profile) {
+            QueryShardContext shardContext = suggestion.getShardContext();
+            response.addProfile(new SuggestProfile("[" + shardContext.index().getName() + "][" + shardContext.getShardId() + "]",
+                    analyzeNanos, generator.switchNanos, generator.lookupNanos,
+                    Math.max(0, finishedTime - analyzedTime - generator.lookupNanos),
+                    generator.tokens, generator.candidates.size(), generator.lookups, generator.options));
+        }
         return response;
     }
 
@@ -58,6 +102,10 @@ public class KeyboardLayoutSuggester extends Suggester<KeyboardLayoutSuggestionC
             String name, KeyboardLayoutSuggestionContext suggestion, CharsRefBuilder spare) throws IOException {
 
         KeyboardLayoutSuggestion layoutSuggestion = new KeyboardLayoutSuggestion(name, suggestion.getSize());
+        if (suggestion.shingleField != null) {
+            layoutSuggestion.addTerm(newPhraseEntry(suggestion.getText().utf8ToString()));
+            return layoutSuggestion;
+        }
         List<Token> tokens = queryTerms(suggestion, spare);
         for (Token token : tokens) {
             Text key = new Text(new BytesArray(token.term.bytes()));
@@ -100,98 +148,591 @@ public class KeyboardLayoutSuggester extends Suggester<KeyboardLayoutSuggestionC
     static class SuggestionsGenerator extends DirectCandidateGenerator.TokenConsumer {
 
         final IndexReader ir;
+        final TermFrequencyCache cache;
         final String field;
-        final KeyboardSwitcher switcher;
+        final KeyboardSwitcher[] switchers;
         final KeyboardLayoutSuggestion acc;
         final double minFreq;
         final double maxFreq;
+        final double maxDoc;
         final boolean lowercaseToken;
         final boolean preserveCase;
         final boolean addOriginal;
-
-        private SuggestionsGenerator(IndexReader ir, KeyboardLayoutSuggestion acc, KeyboardLayoutSuggestionContext context) {
+        final boolean prefix;
+        final int maxExpansions;
+        final boolean detectLayout;
+        final float plausibilityThreshold;
+        final int shardSize;
+        final int maxEdits;
+        final int prefixLength;
+        final String shingleField;
+        final int beamWidth;
+
+        // the whole suggest text and its entry in the phrase mode
+        private final String text;
+        private final KeyboardLayoutSuggestion.Entry phraseEntry;
+
+        // switched and original terms of the whole request, looked up at once
+        private final BytesRefHash terms = new BytesRefHash();
+        // candidates of the switched tokens or of every token in the phrase mode
+        final List<Candidate> candidates = new ArrayList<>();
+
+        // per-request scratch buffers reused across tokens
+        private final BytesRefBuilder originalBytes = new BytesRefBuilder();
+        private final BytesRefBuilder switchedBytes = new BytesRefBuilder();
+        private final BytesRefBuilder casedBytes = new BytesRefBuilder();
+        private final CharsRefBuilder casedChars = new CharsRefBuilder();
+        private final BytesRefBuilder[] preservedCaseBytes;
+        private final TopTerms topTerms;
+        private TermFrequencies fuzzyTerms;
+
+        // per-request counters reported to the node level metrics at once
+        long tokens;
+        long unchangedTokens;
+        long plausibleTokens;
+        long lookups;
+        long rejectedByFreq;
+        long options;
+        long switchNanos;
+        long lookupNanos;
+
+        private SuggestionsGenerator(IndexReader ir, TermFrequencyCache cache, KeyboardLayoutSuggestion acc,
+                                     KeyboardLayoutSuggestionContext context) {
             this.ir = ir;
+            this.cache = cache;
             this.acc = acc;
             this.field = context.getField();
-            this.switcher = context.switcher;
+            this.switchers = context.switchers.toArray(new KeyboardSwitcher[0]);
             this.minFreq = context.minFreq;
             this.maxFreq = context.maxFreq;
+            this.maxDoc = ir.maxDoc();
             this.lowercaseToken = context.lowercaseToken;
             this.preserveCase = context.preserveCase;
             this.addOriginal = context.addOriginal;
+            this.prefix = context.prefix;
+            this.maxExpansions = context.maxExpansions;
+            this.detectLayout = context.detectLayout;
+            this.plausibilityThreshold = context.plausibilityThreshold;
+            this.shardSize = context.getShardSize();
+            this.maxEdits = context.maxEdits;
+            this.prefixLength = context.prefixLength;
+            this.shingleField = context.shingleField;
+            this.beamWidth = context.beamWidth;
+            if (shingleField != null) {
+                this.text = context.getText().utf8ToString();
+                this.phraseEntry = newPhraseEntry(text);
+                acc.addTerm(phraseEntry);
+            } else {
+                this.text = null;
+                this.phraseEntry = null;
+            }
+            this.preservedCaseBytes = new BytesRefBuilder[switchers.length];
+            for (int i = 0; i < preservedCaseBytes.length; i++) {
+                preservedCaseBytes[i] = new BytesRefBuilder();
+            }
+            this.topTerms = new TopTerms(shardSize);
         }
 
         @Override
         public void nextToken() throws IOException {
 
-            BytesRef originalRef = BytesRef.deepCopyOf(fillBytesRef(new BytesRefBuilder()));
-            KeyboardLayoutSuggestion.Entry suggestion = newEntry(originalRef, offsetAttr);
+            if (phraseEntry != null && isStacked()) {
+                return;
+            }
+
+            BytesRef originalRef = fillBytesRef(originalBytes);
+            BytesArray originalArray = new BytesArray(BytesRef.deepCopyOf(originalRef));
+            KeyboardLayoutSuggestion.Entry suggestion = null;
+            if (phraseEntry == null) {
+                suggestion = newEntry(originalArray, offsetAttr);
+                acc.addTerm(suggestion);
+            }
+
+            BytesRef casedRef = originalRef;
+            if (lowercaseToken) {
+                casedChars.copyUTF8Bytes(originalRef);
+                CharacterUtils.toLowerCase(casedChars.chars(), 0, casedChars.length());
+                casedBytes.copyChars(casedChars.chars(), 0, casedChars.length());
+                casedRef = casedBytes.get();
+            }
 
-            Term originalTerm = new Term(field, originalRef);
+            long startTime = System.nanoTime();
+            Candidate candidate = null;
+            if (phraseEntry != null) {
+                // every token takes part in the phrase as typed
+                candidate = newCandidate(suggestion, originalArray, addTerm(casedRef));
+            }
+            // the typed token is scored once and compared with every switched variant
+            float plausibility = detectLayout ? VowelHeuristic.plausibility(casedRef) : 0f;
+            boolean changed = false;
+            for (KeyboardSwitcher switcher : switchers) {
+                if (switcher.switchLayout(casedRef, switchedBytes)) {
+                    changed = true;
+                    if (!isPlausible(plausibility, switchedBytes.get())) {
+                        if (candidate == null) {
+                            int originalId = addOriginal ? addTerm(casedRef) : -1;
+                            candidate = newCandidate(suggestion, originalArray, originalId);
+                        }
+                        candidate.add(switcher, addTerm(switchedBytes.get()));
+                    }
+                }
+            }
+            switchNanos += System.nanoTime() - startTime;
 
-            String token = originalTerm.text();
+            tokens++;
+            if (!changed) {
+                unchangedTokens++;
+            } else if (candidate == null || candidate.size == 0) {
+                plausibleTokens++;
+            }
+        }
 
-            int length = token.length();
-            char[] tokenChars = token.toCharArray();
-            char[] tokenCharsCased = lowercaseToken
-                    ? token.toLowerCase(Locale.ROOT).toCharArray()
-                    : tokenChars;
+        /**
+         * Phrases are built of the first token at every position, so tokens stacked on top of the previous one,
+         * e.g. by synonyms or keyword_repeat, and tokens overlapping it are left out.
+         */
+        private boolean isStacked() {
+            if (candidates.isEmpty()) {
+                return false;
+            }
+            return posIncAttr.getPositionIncrement() == 0
+                    || offsetAttr.startOffset() < candidates.get(candidates.size() - 1).endOffset;
+        }
+
+        private Candidate newCandidate(KeyboardLayoutSuggestion.Entry entry, BytesArray original, int originalId) {
+            Candidate candidate = new Candidate(entry, original, originalId, switchers.length,
+                    offsetAttr.startOffset(), offsetAttr.endOffset());
+            candidates.add(candidate);
+            return candidate;
+        }
 
-            char[] tokenCharsCasedAndSwitched = switcher.switchLayout(tokenCharsCased, 0, length, false);
+        /**
+         * Resolves frequencies of all the collected candidates and fills in options of the suggest entries.
+         */
+        void finish() throws IOException {
+            if (candidates.isEmpty()) {
+                return;
+            }
 
-            if (!Arrays.equals(tokenCharsCased, tokenCharsCasedAndSwitched)) {
+            if (prefix) {
+                complete();
+                return;
+            }
+
+            if (phraseEntry != null) {
+                phrase();
+                return;
+            }
 
-                BytesRef switchedFreqCountingRef = toBytesRef(tokenCharsCasedAndSwitched);
-                int docFreq = ir.docFreq(new Term(field, switchedFreqCountingRef));
-                double maxDoc = ir.maxDoc();
+            lookups += terms.size();
+            long startTime = System.nanoTime();
+            int[] docFreqs = cache.docFreqs(ir, field, terms);
+            lookupNanos += System.nanoTime() - startTime;
 
-                if (isNormalFreq(maxDoc, docFreq)) {
+            for (Candidate candidate : candidates) {
 
-                    BytesRef optionValueRef = lowercaseToken && preserveCase
-                            ? toBytesRef(switcher.switchLayout(tokenChars, 0, length, false))
-                            : switchedFreqCountingRef;
+                for (int i = 0; i < candidate.size; i++) {
 
-                    suggestion.addOption(newSwitchedOption(optionValueRef, docFreq));
+                    int docFreq = docFreqs[candidate.switchedIds[i]];
+
+                    if (isNormalFreq(maxDoc, docFreq)) {
+
+                        KeyboardSwitcher switcher = candidate.switchers[i];
+                        BytesRef optionValueRef;
+                        if (lowercaseToken && preserveCase) {
+                            switcher.switchLayout(candidate.original.toBytesRef(), preservedCaseBytes[i]);
+                            optionValueRef = preservedCaseBytes[i].get();
+                        } else {
+                            optionValueRef = terms.get(candidate.switchedIds[i], new BytesRef());
+                        }
+
+                        topTerms.offer(optionValueRef, docFreq, switcher.getName());
+                    } else {
+                        rejectedByFreq++;
+                    }
+                }
+
+                if (topTerms.size() == 0 && maxEdits > 0) {
+                    correct(candidate);
+                }
+
+                if (topTerms.size() == 0) {
+                    continue;
+                }
+
+                // the most frequent layout goes first, the original term follows the switched ones
+                options += topTerms.drainTo(candidate.entry);
+
+                if (addOriginal) {
+                    candidate.entry.addOption(newOriginalOption(candidate.original, docFreqs[candidate.originalId]));
+                    options++;
+                }
+            }
+        }
+
+        /**
+         * Looks up terms within the edit distance of the switched terms, which are missing from the index.
+         * Distances are tried in the ascending order, so that only the closest corrections are suggested.
+         */
+        private void correct(Candidate candidate) throws IOException {
+            long startTime = System.nanoTime();
+            if (fuzzyTerms == null) {
+                fuzzyTerms = new TermFrequencies(ir, field);
+            }
+            BytesRef spare = new BytesRef();
+            // automata of different layouts may accept the same term, the layout listed first wins
+            BytesRefHash corrected = new BytesRefHash();
+            for (int edits = 1; edits <= maxEdits && topTerms.size() == 0; edits++) {
+                for (int i = 0; i < candidate.size; i++) {
+                    CompiledAutomaton automaton = fuzzyAutomaton(terms.get(candidate.switchedIds[i], spare), edits);
+                    lookups++;
+                    addCompletions(fuzzyTerms.intersect(automaton, maxExpansions), candidate.switchers[i], corrected);
+                }
+            }
+            lookupNanos += System.nanoTime() - startTime;
+        }
+
+        private CompiledAutomaton fuzzyAutomaton(BytesRef term, int edits) {
+            int[] codePoints = term.utf8ToString().codePoints().toArray();
+            int prefixCodePoints = Math.min(prefixLength, codePoints.length);
+            String prefix = new String(codePoints, 0, prefixCodePoints);
+            String suffix = new String(codePoints, prefixCodePoints, codePoints.length - prefixCodePoints);
+            Automaton automaton = new LevenshteinAutomata(suffix, true).toAutomaton(edits, prefix);
+            return new CompiledAutomaton(automaton, true, false);
+        }
+
+        /**
+         * Fills in options of the whole text entry with the most likely phrases made of the typed and switched
+         * tokens, only the phrases scoring higher than the typed text are suggested.
+         */
+        private void phrase() throws IOException {
+            long startTime = System.nanoTime();
+            lookups += terms.size();
+            final int[] docFreqs = cache.docFreqs(ir, field, terms);
+
+            final int tokens = candidates.size();
+            final int[][] variants = new int[tokens][];
+            for (int token = 0; token < tokens; token++) {
+                Candidate candidate = candidates.get(token);
+                // switched terms out of the frequency thresholds are not worth scoring
+                int size = 0;
+                for (int i = 0; i < candidate.size; i++) {
+                    if (isNormalFreq(maxDoc, docFreqs[candidate.switchedIds[i]])) {
+                        candidate.switchers[size] = candidate.switchers[i];
+                        candidate.switchedIds[size++] = candidate.switchedIds[i];
+                    } else {
+                        rejectedByFreq++;
+                    }
+                }
+                candidate.size = size;
+                variants[token] = new int[size + 1];
+                variants[token][0] = candidate.originalId;
+                System.arraycopy(candidate.switchedIds, 0, variants[token], 1, size);
+            }
+
+            // shingles of every variant with every variant of the preceding token
+            final BytesRefHash shingles = new BytesRefHash();
+            final int[][] shingleFreqs = new int[tokens][];
+            final BytesRefBuilder shingle = new BytesRefBuilder();
+            final BytesRef spare = new BytesRef();
+            for (int token = 1; token < tokens; token++) {
+                int[] previous = variants[token - 1];
+                int[] current = variants[token];
+                shingleFreqs[token] = new int[previous.length * current.length];
+                for (int i = 0; i < previous.length; i++) {
+                    for (int j = 0; j < current.length; j++) {
+                        shingle.copyBytes(terms.get(previous[i], spare));
+                        shingle.append((byte) SHINGLE_SEPARATOR);
+                        shingle.append(terms.get(current[j], spare));
+                        shingleFreqs[token][i * current.length + j] = addTerm(shingles, shingle.get());
+                    }
+                }
+            }
+            if (shingles.size() > 0) {
+                lookups += shingles.size();
+                final int[] freqs = cache.docFreqs(ir, shingleField, shingles);
+                for (int token = 1; token < tokens; token++) {
+                    for (int i = 0; i < shingleFreqs[token].length; i++) {
+                        shingleFreqs[token][i] = freqs[shingleFreqs[token][i]];
+                    }
+                }
+            }
+            lookupNanos += System.nanoTime() - startTime;
+
+            final PhraseSearch search = new PhraseSearch(variants, docFreqs, shingleFreqs, maxDoc);
+            final int[] typed = new int[tokens];
+            final double typedScore = search.score(typed);
+            for (PhraseSearch.Phrase phrase : search.search(beamWidth)) {
+                if (phrase.score <= typedScore || phraseEntry.getOptions().size() >= shardSize) {
+                    break;
+                }
+                phraseEntry.addOption(newPhraseOption(phrase.path, phrase.score, docFreqs));
+                options++;
+            }
+            if (addOriginal) {
+                phraseEntry.addOption(newPhraseOption(typed, typedScore, docFreqs));
+                options++;
+            }
+        }
 
-                    if (addOriginal) {
-                        int originalCasedFreq = ir.docFreq(
-                                lowercaseToken ? new Term(field, toBytesRef(tokenCharsCased)) : originalTerm
-                        );
-                        suggestion.addOption(newOriginalOption(originalRef, originalCasedFreq));
+        /**
+         * Builds an option of the suggest text with the tokens replaced by the given variants, the layout is only
+         * reported when all the switched tokens are switched into the same layout.
+         */
+        private KeyboardLayoutSuggestion.Entry.Option newPhraseOption(int[] path, double score, int[] docFreqs) {
+            final StringBuilder builder = new StringBuilder(text.length());
+            final BytesRef spare = new BytesRef();
+            int freq = Integer.MAX_VALUE;
+            KeyboardSwitcher layout = null;
+            boolean sameLayout = true;
+            int end = 0;
+            for (int token = 0; token < path.length; token++) {
+                Candidate candidate = candidates.get(token);
+                int start = Math.max(end, candidate.startOffset);
+                builder.append(text, end, start);
+                if (path[token] == 0) {
+                    builder.append(text, start, Math.max(start, candidate.endOffset));
+                    freq = Math.min(freq, docFreqs[candidate.originalId]);
+                } else {
+                    int i = path[token] - 1;
+                    KeyboardSwitcher switcher = candidate.switchers[i];
+                    if (lowercaseToken && preserveCase) {
+                        switcher.switchLayout(candidate.original.toBytesRef(), switchedBytes);
+                        builder.append(switchedBytes.get().utf8ToString());
+                    } else {
+                        builder.append(terms.get(candidate.switchedIds[i], spare).utf8ToString());
+                    }
+                    freq = Math.min(freq, docFreqs[candidate.switchedIds[i]]);
+                    if (layout == null) {
+                        layout = switcher;
+                    } else if (layout != switcher) {
+                        sameLayout = false;
                     }
+                }
+                end = Math.max(start, candidate.endOffset);
+            }
+            builder.append(text, end, text.length());
+
+            // geometric mean of the token probabilities ranks the phrases the same way as their product
+            float optionScore = (float) Math.pow(10d, score / path.length);
+            return new KeyboardLayoutSuggestion.Entry.Option(new Text(builder.toString()), optionScore, freq,
+                    layout != null, layout != null && sameLayout ? layout.getName() : null);
+        }
+
+        /**
+         * Fills in options of the suggest entries with the most frequent terms starting with the candidates.
+         */
+        private void complete() throws IOException {
+            long startTime = System.nanoTime();
+            TermFrequencies termFrequencies = new TermFrequencies(ir, field);
+            lookupNanos += System.nanoTime() - startTime;
+            BytesRef spare = new BytesRef();
+
+            for (Candidate candidate : candidates) {
+
+                for (int i = 0; i < candidate.size; i++) {
+                    addCompletions(lookupCompletions(termFrequencies, terms.get(candidate.switchedIds[i], spare)),
+                            candidate.switchers[i], null);
+                }
+                if (addOriginal) {
+                    addCompletions(lookupCompletions(termFrequencies, terms.get(candidate.originalId, spare)), null, null);
+                }
+
+                options += topTerms.drainTo(candidate.entry);
+            }
+        }
+
+        private TermFrequencies.Completions lookupCompletions(TermFrequencies termFrequencies, BytesRef prefix)
+                throws IOException {
+            lookups++;
+            long startTime = System.nanoTime();
+            TermFrequencies.Completions completions = termFrequencies.complete(prefix, maxExpansions);
+            lookupNanos += System.nanoTime() - startTime;
+            return completions;
+        }
 
+        /**
+         * Adds completions of the term switched with the provided switcher or of the original term if it is null.
+         * Completions which are already in the offered hash are skipped if it is provided.
+         */
+        private void addCompletions(TermFrequencies.Completions completions, KeyboardSwitcher switcher,
+                                    BytesRefHash offered) {
+            for (int id = 0; id < completions.size(); id++) {
+                BytesRef term = completions.terms.get(id, new BytesRef());
+                if (offered != null && offered.add(term) < 0) {
+                    continue;
+                }
+                int docFreq = completions.docFreqs[id];
+                if (switcher == null) {
+                    topTerms.offer(term, docFreq, null);
+                } else if (isNormalFreq(maxDoc, docFreq)) {
+                    topTerms.offer(term, docFreq, switcher.getName());
+                } else {
+                    rejectedByFreq++;
                 }
             }
+        }
 
-            acc.addTerm(suggestion);
+        /**
+         * Checks whether the token with the given plausibility looks correctly typed, so that its switched variant
+         * is not worth looking up. Tokens are always looked up when either variant is in a script the heuristic
+         * doesn't know, e.g. of a custom layout.
+         */
+        private boolean isPlausible(float plausibility, BytesRef switched) {
+            if (!detectLayout || plausibility == VowelHeuristic.UNKNOWN_SCRIPT) {
+                return false;
+            }
+            if (plausibility == VowelHeuristic.MIXED_SCRIPT) {
+                return true;
+            }
+            if (plausibility < plausibilityThreshold) {
+                return false;
+            }
+            float switchedPlausibility = VowelHeuristic.plausibility(switched);
+            return switchedPlausibility != VowelHeuristic.UNKNOWN_SCRIPT && plausibility > switchedPlausibility;
         }
 
+        private int addTerm(BytesRef term) {
+            return addTerm(terms, term);
+        }
+
+        private static int addTerm(BytesRefHash hash, BytesRef term) {
+            int id = hash.add(term);
+            return id < 0 ? -id - 1 : id;
+        }
 
         private boolean isNormalFreq(double maxDoc, int docFreq) {
-            return docFreq > 0 &&
-                    // skip low freq terms
-                    (minFreq >= 1f && docFreq >= minFreq || docFreq >= Math.ceil(minFreq * maxDoc)) &&
-                    // skip high freq terms
-                    (maxFreq == -1 || maxFreq >= 1f && docFreq <= maxDoc || docFreq <= Math.ceil(maxFreq * maxDoc));
+            return KeyboardLayoutSuggester.isNormalFreq(minFreq, maxFreq, maxDoc, docFreq);
+        }
+    }
+
+    /**
+     * Checks whether the frequency of a switched term is within the configured thresholds.
+     */
+    public static boolean isNormalFreq(double minFreq, double maxFreq, double maxDoc, int docFreq) {
+        return docFreq > 0 &&
+                // skip low freq terms
+                (minFreq >= 1f && docFreq >= minFreq || docFreq >= Math.ceil(minFreq * maxDoc)) &&
+                // skip high freq terms
+                (maxFreq == -1 || maxFreq >= 1f && docFreq <= maxDoc || docFreq <= Math.ceil(maxFreq * maxDoc));
+    }
+
+    /**
+     * Token of the suggest text along with its distinct variants switched into every layout.
+     */
+    private static class Candidate {
+
+        final KeyboardLayoutSuggestion.Entry entry;
+        final BytesArray original;
+        final int originalId;
+        final KeyboardSwitcher[] switchers;
+        final int[] switchedIds;
+        final int startOffset;
+        final int endOffset;
+        int size;
+
+        private Candidate(KeyboardLayoutSuggestion.Entry entry, BytesArray original, int originalId, int layouts,
+                          int startOffset, int endOffset) {
+            this.entry = entry;
+            this.original = original;
+            this.originalId = originalId;
+            this.switchers = new KeyboardSwitcher[layouts];
+            this.switchedIds = new int[layouts];
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        void add(KeyboardSwitcher switcher, int switchedId) {
+            // layouts may share the keys, the first layout wins
+            for (int i = 0; i < size; i++) {
+                if (switchedIds[i] == switchedId) {
+                    return;
+                }
+            }
+            switchers[size] = switcher;
+            switchedIds[size] = switchedId;
+            size++;
+        }
+    }
+
+    /**
+     * Term which may become an option of a suggest entry, the term bytes are not copied
+     * unless the term makes it into the top of the entry options.
+     */
+    private static final class ScoredTerm {
+
+        BytesRef term;
+        int freq;
+        String layout;
+    }
+
+    /**
+     * Keeps the most frequent terms of a single suggest entry ordered the same way as
+     * {@link KeyboardLayoutSuggestion#FREQUENCY}, so that the shard never allocates options
+     * which would be trimmed by the reduce anyway.
+     */
+    private static final class TopTerms extends PriorityQueue<ScoredTerm> {
+
+        private final ScoredTerm[] drained;
+        private ScoredTerm spare = new ScoredTerm();
+
+        TopTerms(int size) {
+            super(size);
+            this.drained = new ScoredTerm[size];
+        }
+
+        @Override
+        protected boolean lessThan(ScoredTerm a, ScoredTerm b) {
+            return a.freq != b.freq ? a.freq < b.freq : a.term.compareTo(b.term) > 0;
+        }
+
+        /**
+         * Offers the term to the queue, the term bytes must not change until the queue is drained.
+         */
+        void offer(BytesRef term, int freq, String layout) {
+            spare.term = term;
+            spare.freq = freq;
+            spare.layout = layout;
+            spare = insertWithOverflow(spare);
+            if (spare == null) {
+                spare = new ScoredTerm();
+            }
+        }
+
+        /**
+         * Adds options of the queued terms to the entry starting with the most frequent one and clears the queue.
+         *
+         * @return number of the added options
+         */
+        int drainTo(KeyboardLayoutSuggestion.Entry entry) {
+            int size = size();
+            for (int i = size - 1; i >= 0; i--) {
+                drained[i] = pop();
+            }
+            for (int i = 0; i < size; i++) {
+                ScoredTerm scored = drained[i];
+                entry.addOption(newOption(scored.term, scored.freq, scored.layout));
+                drained[i] = null;
+            }
+            return size;
         }
     }
 
-    private static BytesRef toBytesRef(char[] chars) {
-        BytesRefBuilder builder = new BytesRefBuilder();
-        builder.copyChars(chars, 0, chars.length);
-        return BytesRef.deepCopyOf(builder.get());
+    private static KeyboardLayoutSuggestion.Entry.Option newOption(BytesRef ref, int freq, String layout) {
+        return new KeyboardLayoutSuggestion.Entry.Option(new Text(new BytesArray(BytesRef.deepCopyOf(ref))), freq,
+                layout != null, layout);
     }
 
-    private static KeyboardLayoutSuggestion.Entry.Option newSwitchedOption(BytesRef ref, int freq) {
-        return new KeyboardLayoutSuggestion.Entry.Option(new Text(new BytesArray(ref)), freq, true);
+    private static KeyboardLayoutSuggestion.Entry.Option newOriginalOption(BytesArray bytes, int freq) {
+        return new KeyboardLayoutSuggestion.Entry.Option(new Text(bytes), freq, false);
     }
 
-    private static KeyboardLayoutSuggestion.Entry.Option newOriginalOption(BytesRef ref, int freq) {
-        return new KeyboardLayoutSuggestion.Entry.Option(new Text(new BytesArray(ref)), freq, false);
+    private static KeyboardLayoutSuggestion.Entry newPhraseEntry(String text) {
+        return new KeyboardLayoutSuggestion.Entry(new Text(text), 0, text.length());
     }
 
-    private static KeyboardLayoutSuggestion.Entry newEntry(BytesRef bytes, OffsetAttribute offsetAttr) {
-        return new KeyboardLayoutSuggestion.Entry(new Text(new BytesArray(bytes)), offsetAttr.startOffset(),
+    private static KeyboardLayoutSuggestion.Entry newEntry(BytesArray bytes, OffsetAttribute offsetAttr) {
+        return new KeyboardLayoutSuggestion.Entry(new Text(bytes), offsetAttr.startOffset(),
                 offsetAttr.endOffset() - offsetAttr.startOffset());
     }
 }
@@ -15,7 +15,15 @@
  */
 package org.elasticsearch.search.suggest.keyboard;
 
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcher;
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcherProvider;
+import org.apache.lucene.analysis.CharacterUtils;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.lucene.util.PriorityQueue;
 import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.text.Text;
@@ -26,20 +34,55 @@ import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.search.suggest.Suggest;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import static org.elasticsearch.common.xcontent.ConstructingObjectParser.constructorArg;
+import static org.elasticsearch.common.xcontent.ConstructingObjectParser.optionalConstructorArg;
 
 
 public final class KeyboardLayoutSuggestion extends Suggest.Suggestion<KeyboardLayoutSuggestion.Entry> {
 
+    private final List<SuggestProfile> profiles;
+
     KeyboardLayoutSuggestion(String name, int size) {
         super(name, size);
+        this.profiles = new ArrayList<>();
     }
 
     public KeyboardLayoutSuggestion(StreamInput in) throws IOException {
         super(in);
+        this.profiles = in.readList(SuggestProfile::new);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeList(profiles);
+    }
+
+    void addProfile(SuggestProfile profile) {
+        profiles.add(profile);
+    }
+
+    /**
+     * @return timing breakdowns of the shards this suggestion has been collected from if profiling is enabled
+     */
+    public List<SuggestProfile> getProfiles() {
+        return profiles;
+    }
+
+    /**
+     * Suggestions are rendered as arrays of entries, so the shard profiles are rendered within the first entry.
+     */
+    private void attachProfiles() {
+        if (!profiles.isEmpty() && !entries.isEmpty()) {
+            entries.get(0).profiles = profiles;
+        }
     }
 
     @Override
@@ -47,6 +90,49 @@ public final class KeyboardLayoutSuggestion extends Suggest.Suggestion<KeyboardL
         return FREQUENCY;
     }
 
+    /**
+     * Merges entries of the shard suggestions keying their options by the text bytes and keeps only
+     * the top options of every entry, so that merged options are never sorted as a whole.
+     */
+    @Override
+    public Suggest.Suggestion<Entry> reduce(List<Suggest.Suggestion<Entry>> toReduce) {
+        if (toReduce.size() == 1) {
+            KeyboardLayoutSuggestion suggestion = (KeyboardLayoutSuggestion) toReduce.get(0);
+            suggestion.attachProfiles();
+            return suggestion;
+        } else if (toReduce.isEmpty()) {
+            return null;
+        }
+        KeyboardLayoutSuggestion leader = (KeyboardLayoutSuggestion) toReduce.get(0);
+        for (int i = 1; i < toReduce.size(); i++) {
+            leader.profiles.addAll(((KeyboardLayoutSuggestion) toReduce.get(i)).profiles);
+        }
+        final int entries = leader.entries.size();
+        OptionsMerger merger = new OptionsMerger(leader.size);
+        for (int i = 0; i < entries; i++) {
+            Entry leaderEntry = leader.entries.get(i);
+            for (Suggest.Suggestion<Entry> suggestion : toReduce) {
+                if (suggestion.getEntries().size() != entries) {
+                    throw new IllegalStateException("Can't merge suggest result, this might be caused by suggest calls " +
+                            "across multiple indices with different analysis chains. Suggest entries have different sizes actual [" +
+                            suggestion.getEntries().size() + "] expected [" + entries + "]");
+                }
+                Entry entry = suggestion.getEntries().get(i);
+                if (!leaderEntry.getText().equals(entry.getText())) {
+                    throw new IllegalStateException("Can't merge suggest entries, this might be caused by suggest calls " +
+                            "across multiple indices with different analysis chains. Suggest entries have different text actual [" +
+                            entry.getText() + "] expected [" + leaderEntry.getText() + "]");
+                }
+                for (Entry.Option option : entry) {
+                    merger.add(option);
+                }
+            }
+            merger.drainTo(leaderEntry);
+        }
+        leader.attachProfiles();
+        return leader;
+    }
+
     @Override
     public String getWriteableName() {
         return KeyboardLayoutSuggestionBuilder.SUGGESTION_NAME;
@@ -65,6 +151,10 @@ public final class KeyboardLayoutSuggestion extends Suggest.Suggestion<KeyboardL
 
     public static class Entry extends Suggest.Suggestion.Entry<KeyboardLayoutSuggestion.Entry.Option> {
 
+        static final ParseField PROFILE_FIELD = new ParseField("profile");
+
+        private List<SuggestProfile> profiles;
+
         Entry() {
         }
 
@@ -74,13 +164,49 @@ public final class KeyboardLayoutSuggestion extends Suggest.Suggestion<KeyboardL
 
         @Override
         protected Option newOption(StreamInput in) throws IOException {
-            return new Option(in);
+            // the entry text has already been read at this point
+            return Option.readCompact(in, text);
+        }
+
+        /**
+         * Writes the options omitting their texts which can be derived from the entry text with a built-in layout.
+         */
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeText(text);
+            out.writeVInt(offset);
+            out.writeVInt(length);
+            out.writeVInt(options.size());
+            if (options.isEmpty()) {
+                return;
+            }
+            TextVariants variants = new TextVariants(text);
+            for (Option option : options) {
+                option.writeCompact(out, variants);
+            }
         }
 
         Entry(Text text, int offset, int length) {
             super(text, offset, length);
         }
 
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            super.toXContent(builder, params);
+            if (profiles != null) {
+                builder.startArray(PROFILE_FIELD.getPreferredName());
+                for (SuggestProfile profile : profiles) {
+                    profile.toXContent(builder, params);
+                }
+                builder.endArray();
+            }
+            return builder;
+        }
+
+        void clearOptions() {
+            options.clear();
+        }
+
         static Entry fromXContent(XContentParser parser) {
             return ENTRY_PARSER.apply(parser, null);
         }
@@ -91,43 +217,115 @@ public final class KeyboardLayoutSuggestion extends Suggest.Suggestion<KeyboardL
             static final ParseField TEXT_FIELD = new ParseField("text");
             static final ParseField FREQ_FIELD = new ParseField("freq");
             static final ParseField SWITCH_FIELD = new ParseField("switch");
+            static final ParseField LAYOUT_FIELD = new ParseField("layout");
+            static final ParseField SCORE_FIELD = new ParseField("score");
 
             private final Text text;
 
             private int freq;
             private boolean switched;
+            private String layout;
 
             Option(Text text, int freq, boolean switched) {
-                super(EMPTY, 0);
+                this(text, freq, switched, null);
+            }
+
+            Option(Text text, int freq, boolean switched, String layout) {
+                this(text, 0f, freq, switched, layout);
+            }
+
+            /**
+             * Creates an option of the whole suggest text, the score is only set for such options.
+             */
+            Option(Text text, float score, int freq, boolean switched, String layout) {
+                super(EMPTY, score);
                 this.text = text;
                 this.freq = freq;
                 this.switched = switched;
+                this.layout = layout;
             }
 
-            Option(StreamInput in) throws IOException {
-                super(EMPTY, 0);
-                text = in.readText();
-                freq = in.readVInt();
-                switched = in.readBoolean();
+            @Override
+            public Text getText() {
+                return text;
             }
 
-            @Override
-            public void writeTo(StreamOutput out) throws IOException {
-                out.writeText(text);
+            /**
+             * @return name of the keyboard layout the option text was switched into or null for the original term
+             */
+            public String getLayout() {
+                return layout;
+            }
+
+            private static final int SWITCHED = 1;
+            private static final int HAS_LAYOUT = 1 << 1;
+            private static final int DERIVED = 1 << 2;
+            private static final int LOWERCASE = 1 << 3;
+            private static final int SCORED = 1 << 4;
+
+            /**
+             * Writes the option omitting its text if it is the entry text, optionally lowercased,
+             * switched into the option layout or kept as is for the original term.
+             */
+            void writeCompact(StreamOutput out, TextVariants variants) throws IOException {
+                int flags = (switched ? SWITCHED : 0) | (layout != null ? HAS_LAYOUT : 0) | (getScore() != 0f ? SCORED : 0);
+                // custom layouts may be missing on the receiving node, so only texts of the built-in ones are derived
+                if (layout == null || KeyboardSwitcherProvider.isBuiltIn(layout)) {
+                    BytesRef optionBytes = text.bytes().toBytesRef();
+                    KeyboardSwitcher switcher = layout != null ? KeyboardSwitcherProvider.provide(layout) : null;
+                    if (optionBytes.bytesEquals(variants.variant(switcher, false))) {
+                        flags |= DERIVED;
+                    } else if (optionBytes.bytesEquals(variants.variant(switcher, true))) {
+                        flags |= DERIVED | LOWERCASE;
+                    }
+                }
+
+                out.writeByte((byte) flags);
+                if ((flags & DERIVED) == 0) {
+                    out.writeText(text);
+                }
                 out.writeVInt(freq);
-                out.writeBoolean(switched);
+                if ((flags & SCORED) != 0) {
+                    out.writeFloat(getScore());
+                }
+                if (layout != null) {
+                    out.writeString(layout);
+                }
+            }
+
+            static Option readCompact(StreamInput in, Text entryText) throws IOException {
+                final int flags = in.readByte();
+                final Text optionText = (flags & DERIVED) == 0 ? in.readText() : null;
+                final int freq = in.readVInt();
+                final float score = (flags & SCORED) != 0 ? in.readFloat() : 0f;
+                final String layout = (flags & HAS_LAYOUT) != 0 ? in.readString() : null;
+                if (optionText != null) {
+                    return new Option(optionText, score, freq, (flags & SWITCHED) != 0, layout);
+                }
+                KeyboardSwitcher switcher = layout != null ? KeyboardSwitcherProvider.provide(layout) : null;
+                BytesRef derived = new TextVariants(entryText).variant(switcher, (flags & LOWERCASE) != 0);
+                return new Option(new Text(new BytesArray(BytesRef.deepCopyOf(derived))), score, freq,
+                        (flags & SWITCHED) != 0, layout);
             }
 
             @Override
             protected void mergeInto(Suggest.Suggestion.Entry.Option otherOption) {
+                // keeps the highest score
+                super.mergeInto(otherOption);
                 freq += ((KeyboardLayoutSuggestion.Entry.Option) otherOption).freq;
             }
 
             @Override
             public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
                 builder.field(TEXT.getPreferredName(), text);
+                if (getScore() != 0f) {
+                    builder.field(SCORE_FIELD.getPreferredName(), getScore());
+                }
                 builder.field(FREQ_FIELD.getPreferredName(), freq);
                 builder.field(SWITCH_FIELD.getPreferredName(), switched);
+                if (layout != null) {
+                    builder.field(LAYOUT_FIELD.getPreferredName(), layout);
+                }
                 return builder;
             }
 
@@ -160,13 +358,17 @@ public final class KeyboardLayoutSuggestion extends Suggest.Suggestion<KeyboardL
                         Text text = new Text((String) args[0]);
                         int freq = (Integer) args[1];
                         boolean switched = (Boolean) args[2];
-                        return new Option(text, freq, switched);
+                        String layout = (String) args[3];
+                        float score = args[4] != null ? (Float) args[4] : 0f;
+                        return new Option(text, score, freq, switched, layout);
                     });
 
             static {
                 OPTIONS_PARSER.declareString(constructorArg(), TEXT_FIELD);
                 OPTIONS_PARSER.declareInt(constructorArg(), FREQ_FIELD);
                 OPTIONS_PARSER.declareBoolean(constructorArg(), SWITCH_FIELD);
+                OPTIONS_PARSER.declareString(optionalConstructorArg(), LAYOUT_FIELD);
+                OPTIONS_PARSER.declareFloat(optionalConstructorArg(), SCORE_FIELD);
             }
         }
 
@@ -178,15 +380,125 @@ public final class KeyboardLayoutSuggestion extends Suggest.Suggestion<KeyboardL
         }
     }
 
+    /**
+     * Variants of the entry text options may consist of, computed lazily.
+     */
+    static final class TextVariants {
+
+        private final BytesRef original;
+        private BytesRef lowercased;
+        private final BytesRefBuilder switchedBytes = new BytesRefBuilder();
+
+        TextVariants(Text text) {
+            this.original = text.bytes().toBytesRef();
+        }
+
+        /**
+         * @return the entry text switched with the given switcher or as is if it is null,
+         * valid until the next call
+         */
+        BytesRef variant(KeyboardSwitcher switcher, boolean lowercase) {
+            BytesRef source = lowercase ? lowercased() : original;
+            if (switcher == null) {
+                return source;
+            }
+            switcher.switchLayout(source, switchedBytes);
+            return switchedBytes.get();
+        }
+
+        private BytesRef lowercased() {
+            if (lowercased == null) {
+                CharsRefBuilder chars = new CharsRefBuilder();
+                chars.copyUTF8Bytes(original);
+                CharacterUtils.toLowerCase(chars.chars(), 0, chars.length());
+                BytesRefBuilder bytes = new BytesRefBuilder();
+                bytes.copyChars(chars.chars(), 0, chars.length());
+                lowercased = bytes.get();
+            }
+            return lowercased;
+        }
+    }
+
+    /**
+     * Option of the reduced entry along with its text bytes.
+     */
+    private static final class MergedOption {
+
+        final BytesRef key;
+        final Entry.Option option;
+
+        private MergedOption(BytesRef key, Entry.Option option) {
+            this.key = key;
+            this.option = option;
+        }
+    }
+
+    /**
+     * Sums frequencies of the same options of different shards and selects the top of them
+     * ordered the same way as {@link #FREQUENCY}.
+     */
+    private static final class OptionsMerger extends PriorityQueue<MergedOption> {
+
+        private final Map<BytesRef, MergedOption> merged = new HashMap<>();
+        private final MergedOption[] top;
+
+        OptionsMerger(int size) {
+            super(size);
+            this.top = new MergedOption[size];
+        }
+
+        @Override
+        protected boolean lessThan(MergedOption a, MergedOption b) {
+            return FREQUENCY.compare(a.option, b.option) > 0;
+        }
+
+        void add(Entry.Option option) {
+            BytesRef key = option.getText().bytes().toBytesRef();
+            MergedOption existing = merged.get(key);
+            if (existing == null) {
+                merged.put(key, new MergedOption(key, option));
+            } else {
+                existing.option.mergeInto(option);
+            }
+        }
+
+        /**
+         * Replaces options of the entry with the top merged options and clears the merger.
+         */
+        void drainTo(Entry entry) {
+            for (MergedOption option : merged.values()) {
+                insertWithOverflow(option);
+            }
+            merged.clear();
+
+            final int size = size();
+            for (int i = size - 1; i >= 0; i--) {
+                top[i] = pop();
+            }
+            entry.clearOptions();
+            for (int i = 0; i < size; i++) {
+                entry.addOption(top[i].option);
+                top[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Orders options by score, which only options of the whole suggest text have, then by frequency and text.
+     */
     public static class Frequency implements Comparator<Suggest.Suggestion.Entry.Option> {
         @Override
         public int compare(Suggest.Suggestion.Entry.Option first, Suggest.Suggestion.Entry.Option second) {
+            int scoreCmp = Float.compare(second.getScore(), first.getScore());
+            if (scoreCmp != 0) {
+                return scoreCmp;
+            }
             int freqCmp = ((Entry.Option) second).freq - ((Entry.Option) first).freq;
             return freqCmp != 0 ? freqCmp : first.getText().compareTo(second.getText());
         }
     }
 
     private static final int TYPE = 152;
-    private static final Comparator<Suggest.Suggestion.Entry.Option> FREQUENCY = new Frequency();
+    static final Comparator<Suggest.Suggestion.Entry.Option> FREQUENCY = new Frequency();
 
 }
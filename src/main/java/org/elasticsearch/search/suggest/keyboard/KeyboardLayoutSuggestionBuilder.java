@@ -15,7 +15,9 @@
  */
 package org.elasticsearch.search.suggest.keyboard;
 
+import com.github.papahigh.keyboardswitcher.KeyboardSwitcher;
 import com.github.papahigh.keyboardswitcher.KeyboardSwitcherProvider;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
 import org.elasticsearch.ElasticsearchParseException;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.ParsingException;
@@ -28,6 +30,8 @@ import org.elasticsearch.search.suggest.SuggestionBuilder;
 import org.elasticsearch.search.suggest.SuggestionSearchContext;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 
@@ -41,13 +45,31 @@ public final class KeyboardLayoutSuggestionBuilder extends SuggestionBuilder<Key
     private static final ParseField LOWERCASE_TOKEN_FIELD = new ParseField("lowercase_token");
     private static final ParseField ADD_ORIGINAL_FIELD = new ParseField("add_original");
     private static final ParseField PRESERVE_CASE_FIELD = new ParseField("preserve_case");
+    private static final ParseField PREFIX_FIELD = new ParseField("prefix");
+    private static final ParseField MAX_EXPANSIONS_FIELD = new ParseField("max_expansions");
+    private static final ParseField DETECT_LAYOUT_FIELD = new ParseField("detect_layout");
+    private static final ParseField PLAUSIBILITY_THRESHOLD_FIELD = new ParseField("plausibility_threshold");
+    private static final ParseField PROFILE_FIELD = new ParseField("profile");
+    private static final ParseField MAX_EDITS_FIELD = new ParseField("max_edits");
+    private static final ParseField PREFIX_LENGTH_FIELD = new ParseField("prefix_length");
+    private static final ParseField SHINGLE_FIELD_FIELD = new ParseField("shingle_field");
+    private static final ParseField BEAM_WIDTH_FIELD = new ParseField("beam_width");
 
-    private String language;
+    private List<KeyboardSwitcher> switchers = new ArrayList<>();
     private double minFreq = 0d;
     private double maxFreq = -1d;
     private boolean lowercaseToken = false;
     private boolean addOriginal = false;
     private boolean preserveCase = false;
+    private boolean prefix = false;
+    private int maxExpansions = 1000;
+    private boolean detectLayout = false;
+    private float plausibilityThreshold = 0.5f;
+    private boolean profile = false;
+    private int maxEdits = 0;
+    private int prefixLength = 1;
+    private String shingleField = null;
+    private int beamWidth = 5;
 
     private KeyboardLayoutSuggestionBuilder(String field) {
         super(field);
@@ -55,17 +77,29 @@ public final class KeyboardLayoutSuggestionBuilder extends SuggestionBuilder<Key
 
     public KeyboardLayoutSuggestionBuilder(StreamInput in) throws IOException {
         super(in);
-        language = in.readString();
+        int size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            switchers.add(KeyboardSwitcherProvider.provide(in.readString()));
+        }
         minFreq = in.readDouble();
         maxFreq = in.readDouble();
         lowercaseToken = in.readBoolean();
         preserveCase = in.readBoolean();
         addOriginal = in.readBoolean();
+        prefix = in.readBoolean();
+        maxExpansions = in.readVInt();
+        detectLayout = in.readBoolean();
+        plausibilityThreshold = in.readFloat();
+        profile = in.readBoolean();
+        maxEdits = in.readVInt();
+        prefixLength = in.readVInt();
+        shingleField = in.readOptionalString();
+        beamWidth = in.readVInt();
     }
 
     private KeyboardLayoutSuggestionBuilder(String field, KeyboardLayoutSuggestionBuilder in) {
         super(field);
-        language = in.language;
+        switchers = in.switchers;
         analyzer = in.analyzer;
         text = in.text;
         minFreq = in.minFreq;
@@ -73,26 +107,66 @@ public final class KeyboardLayoutSuggestionBuilder extends SuggestionBuilder<Key
         lowercaseToken = in.lowercaseToken;
         preserveCase = in.preserveCase;
         addOriginal = in.addOriginal;
+        prefix = in.prefix;
+        maxExpansions = in.maxExpansions;
+        detectLayout = in.detectLayout;
+        plausibilityThreshold = in.plausibilityThreshold;
+        profile = in.profile;
+        maxEdits = in.maxEdits;
+        prefixLength = in.prefixLength;
+        shingleField = in.shingleField;
+        beamWidth = in.beamWidth;
     }
 
     @Override
     protected void doWriteTo(StreamOutput out) throws IOException {
-        out.writeString(language);
+        out.writeVInt(switchers.size());
+        for (KeyboardSwitcher switcher : switchers) {
+            out.writeString(switcher.getName());
+        }
         out.writeDouble(minFreq);
         out.writeDouble(maxFreq);
         out.writeBoolean(lowercaseToken);
         out.writeBoolean(preserveCase);
         out.writeBoolean(addOriginal);
+        out.writeBoolean(prefix);
+        out.writeVInt(maxExpansions);
+        out.writeBoolean(detectLayout);
+        out.writeFloat(plausibilityThreshold);
+        out.writeBoolean(profile);
+        out.writeVInt(maxEdits);
+        out.writeVInt(prefixLength);
+        out.writeOptionalString(shingleField);
+        out.writeVInt(beamWidth);
     }
 
     @Override
     protected XContentBuilder innerToXContent(XContentBuilder builder, Params params) throws IOException {
-        builder.field(LANGUAGE_FIELD.getPreferredName(), language);
+        if (switchers.size() == 1) {
+            builder.field(LANGUAGE_FIELD.getPreferredName(), switchers.get(0).getName());
+        } else {
+            builder.startArray(LANGUAGE_FIELD.getPreferredName());
+            for (KeyboardSwitcher switcher : switchers) {
+                builder.value(switcher.getName());
+            }
+            builder.endArray();
+        }
         builder.field(MIN_FREQ_FIELD.getPreferredName(), minFreq);
         builder.field(MAX_FREQ_FIELD.getPreferredName(), maxFreq);
         builder.field(LOWERCASE_TOKEN_FIELD.getPreferredName(), lowercaseToken);
         builder.field(PRESERVE_CASE_FIELD.getPreferredName(), preserveCase);
         builder.field(ADD_ORIGINAL_FIELD.getPreferredName(), addOriginal);
+        builder.field(PREFIX_FIELD.getPreferredName(), prefix);
+        builder.field(MAX_EXPANSIONS_FIELD.getPreferredName(), maxExpansions);
+        builder.field(DETECT_LAYOUT_FIELD.getPreferredName(), detectLayout);
+        builder.field(PLAUSIBILITY_THRESHOLD_FIELD.getPreferredName(), plausibilityThreshold);
+        builder.field(PROFILE_FIELD.getPreferredName(), profile);
+        builder.field(MAX_EDITS_FIELD.getPreferredName(), maxEdits);
+        builder.field(PREFIX_LENGTH_FIELD.getPreferredName(), prefixLength);
+        if (shingleField != null) {
+            builder.field(SHINGLE_FIELD_FIELD.getPreferredName(), shingleField);
+        }
+        builder.field(BEAM_WIDTH_FIELD.getPreferredName(), beamWidth);
         return builder;
     }
 
@@ -100,7 +174,9 @@ public final class KeyboardLayoutSuggestionBuilder extends SuggestionBuilder<Key
     @Override
     protected SuggestionSearchContext.SuggestionContext build(QueryShardContext context) {
         KeyboardLayoutSuggestionContext suggestionContext = new KeyboardLayoutSuggestionContext(context,
-                KeyboardSwitcherProvider.provide(language), minFreq, maxFreq, lowercaseToken, preserveCase, addOriginal);
+                switchers, minFreq, maxFreq, lowercaseToken, preserveCase, addOriginal,
+                prefix, maxExpansions, detectLayout, plausibilityThreshold, profile, maxEdits, prefixLength,
+                shingleField, beamWidth);
         populateCommonFields(context.getMapperService(), suggestionContext);
         return suggestionContext;
     }
@@ -112,17 +188,27 @@ public final class KeyboardLayoutSuggestionBuilder extends SuggestionBuilder<Key
 
     @Override
     protected boolean doEquals(KeyboardLayoutSuggestionBuilder other) {
-        return Objects.equals(language, other.language) &&
+        return Objects.equals(switchers, other.switchers) &&
                 Objects.equals(minFreq, other.minFreq) &&
                 Objects.equals(maxFreq, other.maxFreq) &&
                 Objects.equals(lowercaseToken, other.lowercaseToken) &&
                 Objects.equals(preserveCase, other.preserveCase) &&
-                Objects.equals(addOriginal, other.addOriginal);
+                Objects.equals(addOriginal, other.addOriginal) &&
+                Objects.equals(prefix, other.prefix) &&
+                Objects.equals(maxExpansions, other.maxExpansions) &&
+                Objects.equals(detectLayout, other.detectLayout) &&
+                Objects.equals(plausibilityThreshold, other.plausibilityThreshold) &&
+                Objects.equals(profile, other.profile) &&
+                Objects.equals(maxEdits, other.maxEdits) &&
+                Objects.equals(prefixLength, other.prefixLength) &&
+                Objects.equals(shingleField, other.shingleField) &&
+                Objects.equals(beamWidth, other.beamWidth);
     }
 
     @Override
     protected int doHashCode() {
-        return Objects.hash(language, minFreq, maxFreq, lowercaseToken, preserveCase, addOriginal);
+        return Objects.hash(switchers, minFreq, maxFreq, lowercaseToken, preserveCase, addOriginal, prefix, maxExpansions,
+                detectLayout, plausibilityThreshold, profile, maxEdits, prefixLength, shingleField, beamWidth);
     }
 
     private void minFreq(double minFreq) {
@@ -157,8 +243,62 @@ public final class KeyboardLayoutSuggestionBuilder extends SuggestionBuilder<Key
         this.preserveCase = preserveCase;
     }
 
+    private void prefix(boolean prefix) {
+        this.prefix = prefix;
+    }
+
+    private void maxExpansions(int maxExpansions) {
+        if (maxExpansions <= 0) {
+            throw new IllegalArgumentException("maxExpansions must be greater than 0");
+        }
+        this.maxExpansions = maxExpansions;
+    }
+
+    private void detectLayout(boolean detectLayout) {
+        this.detectLayout = detectLayout;
+    }
+
+    private void plausibilityThreshold(float plausibilityThreshold) {
+        if (plausibilityThreshold < 0.0f || plausibilityThreshold > 1.0f) {
+            throw new IllegalArgumentException("plausibilityThreshold must be between 0 and 1");
+        }
+        this.plausibilityThreshold = plausibilityThreshold;
+    }
+
+    private void profile(boolean profile) {
+        this.profile = profile;
+    }
+
+    private void maxEdits(int maxEdits) {
+        if (maxEdits < 0 || maxEdits > LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE) {
+            throw new IllegalArgumentException("maxEdits must be between 0 and " + LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE);
+        }
+        this.maxEdits = maxEdits;
+    }
+
+    private void prefixLength(int prefixLength) {
+        if (prefixLength < 0) {
+            throw new IllegalArgumentException("prefixLength must be positive");
+        }
+        this.prefixLength = prefixLength;
+    }
+
+    private void shingleField(String shingleField) {
+        this.shingleField = shingleField;
+    }
+
+    private void beamWidth(int beamWidth) {
+        if (beamWidth <= 0) {
+            throw new IllegalArgumentException("beamWidth must be greater than 0");
+        }
+        this.beamWidth = beamWidth;
+    }
+
     private void language(String language) {
-        this.language = language;
+        KeyboardSwitcher switcher = KeyboardSwitcherProvider.provide(language);
+        if (!switchers.contains(switcher)) {
+            switchers.add(switcher);
+        }
     }
 
     public static KeyboardLayoutSuggestionBuilder fromXContent(XContentParser parser) throws IOException {
@@ -194,6 +334,24 @@ public final class KeyboardLayoutSuggestionBuilder extends SuggestionBuilder<Key
                     tmpValuesHolder.lowercaseToken(parser.booleanValue());
                 } else if (PRESERVE_CASE_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
                     tmpValuesHolder.preserveCase(parser.booleanValue());
+                } else if (PREFIX_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    tmpValuesHolder.prefix(parser.booleanValue());
+                } else if (MAX_EXPANSIONS_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    tmpValuesHolder.maxExpansions(parser.intValue());
+                } else if (DETECT_LAYOUT_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    tmpValuesHolder.detectLayout(parser.booleanValue());
+                } else if (PLAUSIBILITY_THRESHOLD_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    tmpValuesHolder.plausibilityThreshold(parser.floatValue());
+                } else if (PROFILE_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    tmpValuesHolder.profile(parser.booleanValue());
+                } else if (MAX_EDITS_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    tmpValuesHolder.maxEdits(parser.intValue());
+                } else if (PREFIX_LENGTH_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    tmpValuesHolder.prefixLength(parser.intValue());
+                } else if (SHINGLE_FIELD_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    tmpValuesHolder.shingleField(parser.text());
+                } else if (BEAM_WIDTH_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    tmpValuesHolder.beamWidth(parser.intValue());
                 } else if (LANGUAGE_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
                     tmpValuesHolder.language(parser.text());
                 } else {
@@ -201,6 +359,11 @@ public final class KeyboardLayoutSuggestionBuilder extends SuggestionBuilder<Key
                             "suggester[" + SUGGESTION_NAME + "] doesn't support field [" + currentFieldName + "]");
                 }
 
+            } else if (token == XContentParser.Token.START_ARRAY &&
+                    LANGUAGE_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                    tmpValuesHolder.language(parser.text());
+                }
             } else {
                 throw new ParsingException(parser.getTokenLocation(), "suggester[" + SUGGESTION_NAME + " ] " +
                         "parsing failed on [" + currentFieldName + "]");
@@ -212,6 +375,27 @@ public final class KeyboardLayoutSuggestionBuilder extends SuggestionBuilder<Key
                     "the required field option [" + FIELDNAME_FIELD.getPreferredName() + "] is missing");
         }
 
+        if (tmpValuesHolder.switchers.isEmpty()) {
+            throw new ElasticsearchParseException(
+                    "the required field option [" + LANGUAGE_FIELD.getPreferredName() + "] is missing");
+        }
+
+        if (tmpValuesHolder.prefix && tmpValuesHolder.maxEdits > 0) {
+            throw new ElasticsearchParseException("the option [" + MAX_EDITS_FIELD.getPreferredName() +
+                    "] can't be used along with [" + PREFIX_FIELD.getPreferredName() + "]");
+        }
+
+        if (tmpValuesHolder.shingleField != null) {
+            if (tmpValuesHolder.prefix) {
+                throw new ElasticsearchParseException("the option [" + SHINGLE_FIELD_FIELD.getPreferredName() +
+                        "] can't be used along with [" + PREFIX_FIELD.getPreferredName() + "]");
+            }
+            if (tmpValuesHolder.maxEdits > 0) {
+                throw new ElasticsearchParseException("the option [" + SHINGLE_FIELD_FIELD.getPreferredName() +
+                        "] can't be used along with [" + MAX_EDITS_FIELD.getPreferredName() + "]");
+            }
+        }
+
         return new KeyboardLayoutSuggestionBuilder(fieldName, tmpValuesHolder);
     }
 }
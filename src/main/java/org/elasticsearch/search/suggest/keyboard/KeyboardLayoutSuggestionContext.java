@@ -19,36 +19,68 @@ import com.github.papahigh.keyboardswitcher.KeyboardSwitcher;
 import org.elasticsearch.index.query.QueryShardContext;
 import org.elasticsearch.search.suggest.SuggestionSearchContext;
 
+import java.util.List;
+
 final class KeyboardLayoutSuggestionContext extends SuggestionSearchContext.SuggestionContext {
 
-    final KeyboardSwitcher switcher;
+    final List<KeyboardSwitcher> switchers;
 
     final double minFreq;
     final double maxFreq;
     final boolean lowercaseToken;
     final boolean addOriginal;
     final boolean preserveCase;
+    final boolean prefix;
+    final int maxExpansions;
+    final boolean detectLayout;
+    final float plausibilityThreshold;
+    final boolean profile;
+    final int maxEdits;
+    final int prefixLength;
+    final String shingleField;
+    final int beamWidth;
 
-    KeyboardLayoutSuggestionContext(QueryShardContext shardContext, KeyboardSwitcher switcher,
-                                    double minFreq, double maxFreq, boolean lowercaseToken, boolean preserveCase, boolean addOriginal) {
+    KeyboardLayoutSuggestionContext(QueryShardContext shardContext, List<KeyboardSwitcher> switchers,
+                                    double minFreq, double maxFreq, boolean lowercaseToken, boolean preserveCase, boolean addOriginal,
+                                    boolean prefix, int maxExpansions, boolean detectLayout, float plausibilityThreshold,
+                                    boolean profile, int maxEdits, int prefixLength,
+                                    String shingleField, int beamWidth) {
         super(KeyboardLayoutSuggester.INSTANCE, shardContext);
-        this.switcher = switcher;
+        this.switchers = switchers;
         this.minFreq = minFreq;
         this.maxFreq = maxFreq;
         this.lowercaseToken = lowercaseToken;
         this.preserveCase = preserveCase;
         this.addOriginal = addOriginal;
+        this.prefix = prefix;
+        this.maxExpansions = maxExpansions;
+        this.detectLayout = detectLayout;
+        this.plausibilityThreshold = plausibilityThreshold;
+        this.profile = profile;
+        this.maxEdits = maxEdits;
+        this.prefixLength = prefixLength;
+        this.shingleField = shingleField;
+        this.beamWidth = beamWidth;
     }
 
     @Override
     public String toString() {
         return "KeyboardSwitchSuggestionContext[" +
-                ", switcher=" + switcher +
+                ", switchers=" + switchers +
                 ", minFreq=" + minFreq +
                 ", maxFreq=" + maxFreq +
                 ", lowercaseToken=" + lowercaseToken +
                 ", addOriginal=" + addOriginal +
                 ", preserveCase=" + preserveCase +
+                ", prefix=" + prefix +
+                ", maxExpansions=" + maxExpansions +
+                ", detectLayout=" + detectLayout +
+                ", plausibilityThreshold=" + plausibilityThreshold +
+                ", profile=" + profile +
+                ", maxEdits=" + maxEdits +
+                ", prefixLength=" + prefixLength +
+                ", shingleField=" + shingleField +
+                ", beamWidth=" + beamWidth +
                 ", context=" + super.toString() +
                 "]";
     }
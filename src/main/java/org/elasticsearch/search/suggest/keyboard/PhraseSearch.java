@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.suggest.keyboard;
+
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * Picks the most likely phrases made of the typed or switched variant of every token of the suggest text.
+ * Phrases are scored with the stupid backoff model over document frequencies of the terms and of the
+ * two-word shingles, and are searched keeping only a fixed number of the best partial phrases per token.
+ */
+final class PhraseSearch {
+
+    private static final double BACKOFF_DISCOUNT = 0.4d;
+
+    private final int[][] variants;
+    private final int[] docFreqs;
+    private final int[][] shingleFreqs;
+    private final double maxDoc;
+
+    /**
+     * @param variants     term ids of the variants of every token, the typed term goes first
+     * @param docFreqs     document frequencies of the terms indexed by the term id
+     * @param shingleFreqs document frequencies of the shingles every variant of a token makes with every variant
+     *                     of the preceding token, indexed by {@code previous * variants[token].length + current}
+     * @param maxDoc       number of documents the frequencies are collected from
+     */
+    PhraseSearch(int[][] variants, int[] docFreqs, int[][] shingleFreqs, double maxDoc) {
+        this.variants = variants;
+        this.docFreqs = docFreqs;
+        this.shingleFreqs = shingleFreqs;
+        this.maxDoc = maxDoc;
+    }
+
+    /**
+     * @return log10 score of the phrase made of the given variant of every token
+     */
+    double score(int[] path) {
+        double score = Math.log10(unigram(variants[0][path[0]]));
+        for (int token = 1; token < variants.length; token++) {
+            score += Math.log10(bigram(token, path[token - 1], path[token]));
+        }
+        return score;
+    }
+
+    /**
+     * @return at most beamWidth phrases ordered by descending score
+     */
+    Phrase[] search(int beamWidth) {
+        Beam beam = new Beam(beamWidth);
+        for (int variant = 0; variant < variants[0].length; variant++) {
+            beam.insertWithOverflow(new Hypothesis(null, variant, Math.log10(unigram(variants[0][variant]))));
+        }
+        Hypothesis[] alive = beam.drain();
+        for (int token = 1; token < variants.length; token++) {
+            for (Hypothesis previous : alive) {
+                for (int variant = 0; variant < variants[token].length; variant++) {
+                    double score = previous.score + Math.log10(bigram(token, previous.variant, variant));
+                    beam.insertWithOverflow(new Hypothesis(previous, variant, score));
+                }
+            }
+            alive = beam.drain();
+        }
+
+        Phrase[] phrases = new Phrase[alive.length];
+        for (int i = 0; i < alive.length; i++) {
+            int[] path = new int[variants.length];
+            int token = variants.length - 1;
+            for (Hypothesis hypothesis = alive[i]; hypothesis != null; hypothesis = hypothesis.previous) {
+                path[token--] = hypothesis.variant;
+            }
+            phrases[i] = new Phrase(path, alive[i].score);
+        }
+        return phrases;
+    }
+
+    private double unigram(int termId) {
+        return (docFreqs[termId] + 1d) / (maxDoc + 1d);
+    }
+
+    private double bigram(int token, int previous, int current) {
+        int shingleFreq = shingleFreqs[token][previous * variants[token].length + current];
+        if (shingleFreq > 0) {
+            return Math.min(1d, shingleFreq / Math.max(1d, docFreqs[variants[token - 1][previous]]));
+        }
+        return BACKOFF_DISCOUNT * unigram(variants[token][current]);
+    }
+
+    /**
+     * Phrase given by the variant index of every token along with its log10 score.
+     */
+    static final class Phrase {
+
+        final int[] path;
+        final double score;
+
+        private Phrase(int[] path, double score) {
+            this.path = path;
+            this.score = score;
+        }
+    }
+
+    private static final class Hypothesis {
+
+        final Hypothesis previous;
+        final int variant;
+        final double score;
+
+        private Hypothesis(Hypothesis previous, int variant, double score) {
+            this.previous = previous;
+            this.variant = variant;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Keeps the best partial phrases ending at the same token, the typed variants win the ties.
+     */
+    private static final class Beam extends PriorityQueue<Hypothesis> {
+
+        Beam(int size) {
+            super(size);
+        }
+
+        @Override
+        protected boolean lessThan(Hypothesis a, Hypothesis b) {
+            return a.score != b.score ? a.score < b.score : a.variant > b.variant;
+        }
+
+        /**
+         * @return the queued hypotheses ordered by descending score, the queue is cleared
+         */
+        Hypothesis[] drain() {
+            Hypothesis[] drained = new Hypothesis[size()];
+            for (int i = drained.length - 1; i >= 0; i--) {
+                drained[i] = pop();
+            }
+            return drained;
+        }
+    }
+}
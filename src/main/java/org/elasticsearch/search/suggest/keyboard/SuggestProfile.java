@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.suggest.keyboard;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+
+/**
+ * Timing breakdown of the keyboard layout suggestion executed on a single shard.
+ * The breakdown follows the layout of the search profile, every timing comes along with its count.
+ */
+public final class SuggestProfile implements Writeable, ToXContentObject {
+
+    private final String shard;
+    private final long analyzeNanos;
+    private final long switchNanos;
+    private final long lookupNanos;
+    private final long buildNanos;
+    private final long tokens;
+    private final long candidates;
+    private final long lookups;
+    private final long options;
+
+    SuggestProfile(String shard, long analyzeNanos, long switchNanos, long lookupNanos, long buildNanos,
+                   long tokens, long candidates, long lookups, long options) {
+        this.shard = shard;
+        this.analyzeNanos = analyzeNanos;
+        this.switchNanos = switchNanos;
+        this.lookupNanos = lookupNanos;
+        this.buildNanos = buildNanos;
+        this.tokens = tokens;
+        this.candidates = candidates;
+        this.lookups = lookups;
+        this.options = options;
+    }
+
+    SuggestProfile(StreamInput in) throws IOException {
+        shard = in.readString();
+        analyzeNanos = in.readVLong();
+        switchNanos = in.readVLong();
+        lookupNanos = in.readVLong();
+        buildNanos = in.readVLong();
+        tokens = in.readVLong();
+        candidates = in.readVLong();
+        lookups = in.readVLong();
+        options = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(shard);
+        out.writeVLong(analyzeNanos);
+        out.writeVLong(switchNanos);
+        out.writeVLong(lookupNanos);
+        out.writeVLong(buildNanos);
+        out.writeVLong(tokens);
+        out.writeVLong(candidates);
+        out.writeVLong(lookups);
+        out.writeVLong(options);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("shard", shard);
+        long totalNanos = analyzeNanos + switchNanos + lookupNanos + buildNanos;
+        if (builder.humanReadable()) {
+            builder.field("time", TimeValue.timeValueNanos(totalNanos).toString());
+        }
+        builder.field("time_in_nanos", totalNanos);
+        builder.startObject("breakdown");
+        builder.field("analyze", analyzeNanos);
+        builder.field("analyze_count", tokens);
+        builder.field("switch", switchNanos);
+        builder.field("switch_count", candidates);
+        builder.field("lookup", lookupNanos);
+        builder.field("lookup_count", lookups);
+        builder.field("build_options", buildNanos);
+        builder.field("build_options_count", options);
+        builder.endObject();
+        return builder.endObject();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.suggest.keyboard;
+
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.metrics.CounterMetric;
+
+/**
+ * Node level counters of the keyboard layout suggester. Counts of a single suggest request are
+ * collected locally and added once the request is executed, so that shards don't contend on every token.
+ */
+public final class SuggesterMetrics {
+
+    private final CounterMetric requests = new CounterMetric();
+    private final CounterMetric tokens = new CounterMetric();
+    private final CounterMetric unchangedTokens = new CounterMetric();
+    private final CounterMetric plausibleTokens = new CounterMetric();
+    private final CounterMetric lookups = new CounterMetric();
+    private final CounterMetric rejectedByFreq = new CounterMetric();
+    private final CounterMetric options = new CounterMetric();
+    private final CounterMetric analyzeNanos = new CounterMetric();
+    private final CounterMetric switchNanos = new CounterMetric();
+    private final CounterMetric lookupNanos = new CounterMetric();
+
+    void onSuggest(KeyboardLayoutSuggester.SuggestionsGenerator generator, long analyzeNanos) {
+        this.requests.inc();
+        this.tokens.inc(generator.tokens);
+        this.unchangedTokens.inc(generator.unchangedTokens);
+        this.plausibleTokens.inc(generator.plausibleTokens);
+        this.lookups.inc(generator.lookups);
+        this.rejectedByFreq.inc(generator.rejectedByFreq);
+        this.options.inc(generator.options);
+        this.analyzeNanos.inc(analyzeNanos);
+        this.switchNanos.inc(generator.switchNanos);
+        this.lookupNanos.inc(generator.lookupNanos);
+    }
+
+    /**
+     * @return point in time stats of the suggester along with stats of the given frequency cache
+     */
+    public SuggesterStats stats(TermFrequencyCache cache) {
+        Cache.CacheStats cacheStats = cache.stats();
+        return new SuggesterStats(requests.count(), tokens.count(), unchangedTokens.count(), plausibleTokens.count(),
+                lookups.count(), rejectedByFreq.count(), options.count(),
+                analyzeNanos.count(), switchNanos.count(), lookupNanos.count(),
+                cache.count(), cacheStats.getHits(), cacheStats.getMisses(), cacheStats.getEvictions());
+    }
+}
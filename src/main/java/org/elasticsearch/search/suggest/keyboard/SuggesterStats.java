@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.suggest.keyboard;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+
+/**
+ * Point in time stats of the keyboard layout suggester of a single node.
+ */
+public final class SuggesterStats implements Writeable, ToXContentFragment {
+
+    private final long requests;
+    private final long tokens;
+    private final long unchangedTokens;
+    private final long plausibleTokens;
+    private final long lookups;
+    private final long rejectedByFreq;
+    private final long options;
+    private final long analyzeNanos;
+    private final long switchNanos;
+    private final long lookupNanos;
+
+    private final long cacheSize;
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final long cacheEvictions;
+
+    SuggesterStats(long requests, long tokens, long unchangedTokens, long plausibleTokens, long lookups,
+                   long rejectedByFreq, long options, long analyzeNanos, long switchNanos, long lookupNanos,
+                   long cacheSize, long cacheHits, long cacheMisses, long cacheEvictions) {
+        this.requests = requests;
+        this.tokens = tokens;
+        this.unchangedTokens = unchangedTokens;
+        this.plausibleTokens = plausibleTokens;
+        this.lookups = lookups;
+        this.rejectedByFreq = rejectedByFreq;
+        this.options = options;
+        this.analyzeNanos = analyzeNanos;
+        this.switchNanos = switchNanos;
+        this.lookupNanos = lookupNanos;
+        this.cacheSize = cacheSize;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.cacheEvictions = cacheEvictions;
+    }
+
+    public SuggesterStats(StreamInput in) throws IOException {
+        requests = in.readVLong();
+        tokens = in.readVLong();
+        unchangedTokens = in.readVLong();
+        plausibleTokens = in.readVLong();
+        lookups = in.readVLong();
+        rejectedByFreq = in.readVLong();
+        options = in.readVLong();
+        analyzeNanos = in.readVLong();
+        switchNanos = in.readVLong();
+        lookupNanos = in.readVLong();
+        cacheSize = in.readVLong();
+        cacheHits = in.readVLong();
+        cacheMisses = in.readVLong();
+        cacheEvictions = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(requests);
+        out.writeVLong(tokens);
+        out.writeVLong(unchangedTokens);
+        out.writeVLong(plausibleTokens);
+        out.writeVLong(lookups);
+        out.writeVLong(rejectedByFreq);
+        out.writeVLong(options);
+        out.writeVLong(analyzeNanos);
+        out.writeVLong(switchNanos);
+        out.writeVLong(lookupNanos);
+        out.writeVLong(cacheSize);
+        out.writeVLong(cacheHits);
+        out.writeVLong(cacheMisses);
+        out.writeVLong(cacheEvictions);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("suggest");
+        builder.field("requests", requests);
+        builder.field("tokens", tokens);
+        builder.field("unchanged_tokens", unchangedTokens);
+        builder.field("plausible_tokens", plausibleTokens);
+        builder.field("lookups", lookups);
+        builder.field("rejected_by_freq", rejectedByFreq);
+        builder.field("options", options);
+        builder.humanReadableField("analyze_time_in_millis", "analyze_time", TimeValue.timeValueNanos(analyzeNanos));
+        builder.humanReadableField("switch_time_in_millis", "switch_time", TimeValue.timeValueNanos(switchNanos));
+        builder.humanReadableField("lookup_time_in_millis", "lookup_time", TimeValue.timeValueNanos(lookupNanos));
+        builder.endObject();
+
+        builder.startObject("cache");
+        builder.field("size", cacheSize);
+        builder.field("hits", cacheHits);
+        builder.field("misses", cacheMisses);
+        builder.field("evictions", cacheEvictions);
+        builder.endObject();
+        return builder;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getTokens() {
+        return tokens;
+    }
+
+    public long getUnchangedTokens() {
+        return unchangedTokens;
+    }
+
+    public long getPlausibleTokens() {
+        return plausibleTokens;
+    }
+
+    public long getLookups() {
+        return lookups;
+    }
+
+    public long getRejectedByFreq() {
+        return rejectedByFreq;
+    }
+
+    public long getOptions() {
+        return options;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.suggest.keyboard;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves document frequencies of the field terms. Terms enums of every segment
+ * are resolved once and reused across lookups of a single suggest request.
+ */
+final class TermFrequencies {
+
+    private final Terms[] segmentTerms;
+    private final TermsEnum[] termsEnums;
+
+    TermFrequencies(IndexReader reader, String field) throws IOException {
+        List<Terms> terms = new ArrayList<>(reader.leaves().size());
+        List<TermsEnum> enums = new ArrayList<>(reader.leaves().size());
+        for (LeafReaderContext leaf : reader.leaves()) {
+            Terms leafTerms = leaf.reader().terms(field);
+            if (leafTerms != null) {
+                terms.add(leafTerms);
+                enums.add(leafTerms.iterator());
+            }
+        }
+        this.segmentTerms = terms.toArray(new Terms[0]);
+        this.termsEnums = enums.toArray(new TermsEnum[0]);
+    }
+
+    int docFreq(BytesRef term) throws IOException {
+        int docFreq = 0;
+        for (TermsEnum termsEnum : termsEnums) {
+            if (termsEnum.seekExact(term)) {
+                docFreq += termsEnum.docFreq();
+            }
+        }
+        return docFreq;
+    }
+
+    /**
+     * Resolves document frequencies of all the given terms with a single forward pass over
+     * terms dictionary of every segment. Note that the given hash is sorted and must be cleared
+     * before it can be reused.
+     *
+     * @return document frequencies indexed by the term id
+     */
+    int[] docFreqs(BytesRefHash terms) throws IOException {
+        final int size = terms.size();
+        final int[] sortedIds = terms.sort();
+        final int[] docFreqs = new int[size];
+        final BytesRef term = new BytesRef();
+        for (TermsEnum termsEnum : termsEnums) {
+            BytesRef ceil = null;
+            for (int i = 0; i < size; i++) {
+                final int id = sortedIds[i];
+                terms.get(id, term);
+                if (ceil != null) {
+                    final int cmp = term.compareTo(ceil);
+                    if (cmp < 0) {
+                        // the enum is positioned past this term so the segment doesn't contain it
+                        continue;
+                    } else if (cmp == 0) {
+                        docFreqs[id] += termsEnum.docFreq();
+                        continue;
+                    }
+                }
+                TermsEnum.SeekStatus status = termsEnum.seekCeil(term);
+                if (status == TermsEnum.SeekStatus.END) {
+                    break;
+                }
+                ceil = termsEnum.term();
+                if (status == TermsEnum.SeekStatus.FOUND) {
+                    docFreqs[id] += termsEnum.docFreq();
+                }
+            }
+        }
+        return docFreqs;
+    }
+
+    /**
+     * Collects at most maxExpansions distinct terms starting with the given prefix along with their document
+     * frequencies. Terms are collected in the alphabetical order, the caller ranks them by frequency.
+     */
+    Completions complete(BytesRef prefix, int maxExpansions) throws IOException {
+        Completions completions = new Completions();
+        for (TermsEnum termsEnum : termsEnums) {
+            if (termsEnum.seekCeil(prefix) == TermsEnum.SeekStatus.END) {
+                continue;
+            }
+            BytesRef term = termsEnum.term();
+            do {
+                if (!StringHelper.startsWith(term, prefix) || !completions.add(term, termsEnum.docFreq(), maxExpansions)) {
+                    break;
+                }
+            } while ((term = termsEnum.next()) != null);
+        }
+        return completions;
+    }
+
+    /**
+     * Collects at most maxExpansions distinct terms accepted by the automaton along with their document
+     * frequencies. The automaton is compiled once and intersected with terms dictionary of every segment.
+     */
+    Completions intersect(CompiledAutomaton automaton, int maxExpansions) throws IOException {
+        Completions matches = new Completions();
+        for (Terms terms : segmentTerms) {
+            TermsEnum termsEnum = automaton.getTermsEnum(terms);
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                if (!matches.add(term, termsEnum.docFreq(), maxExpansions)) {
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    static final class Completions {
+
+        final BytesRefHash terms = new BytesRefHash();
+        int[] docFreqs = new int[8];
+        // the greatest of the collected terms
+        private final BytesRefBuilder last = new BytesRefBuilder();
+
+        int size() {
+            return terms.size();
+        }
+
+        /**
+         * Adds document frequency of the term, new terms are collected until there are maxExpansions of them
+         * while the collected terms keep summing up frequencies of every segment.
+         *
+         * @return false if the term is new and greater than all the collected ones, so that no further term
+         * of the same ordered enum may be collected
+         */
+        boolean add(BytesRef term, int docFreq, int maxExpansions) {
+            int id = terms.find(term);
+            if (id < 0) {
+                if (terms.size() >= maxExpansions) {
+                    return term.compareTo(last.get()) < 0;
+                }
+                id = terms.add(term);
+                docFreqs = ArrayUtil.grow(docFreqs, id + 1);
+                if (id == 0 || term.compareTo(last.get()) > 0) {
+                    last.copyBytes(term);
+                }
+            }
+            docFreqs[id] += docFreq;
+            return true;
+        }
+    }
+}
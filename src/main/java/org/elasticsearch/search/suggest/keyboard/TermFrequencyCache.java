@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.suggest.keyboard;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.RemovalNotification;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Node level cache of the suggest candidate frequencies. Entries are keyed by the segment core cache key,
+ * the field and the term, so that frequencies of the segments which outlive a refresh stay cached
+ * while entries of a segment are evicted as soon as it is closed, e.g. after a merge.
+ * The size of the cache is counted in entries, that is one entry per segment and term.
+ */
+public final class TermFrequencyCache {
+
+    public static final Setting<Integer> CACHE_SIZE_SETTING =
+            Setting.intSetting("keyboard_layout.suggest.cache.size", 10_000, 0, Setting.Property.NodeScope);
+
+    static final TermFrequencyCache DISABLED = new TermFrequencyCache(0);
+
+    private final Cache<Key, Integer> cache;
+    // keys of every segment, so that closing a segment only touches its own entries
+    private final ConcurrentMap<IndexReader.CacheKey, Set<Key>> segmentKeys = ConcurrentCollections.newConcurrentMap();
+
+    public TermFrequencyCache(Settings settings) {
+        this(CACHE_SIZE_SETTING.get(settings));
+    }
+
+    private TermFrequencyCache(int size) {
+        this.cache = size > 0 ? CacheBuilder.<Key, Integer>builder()
+                .setMaximumWeight(size)
+                .removalListener(this::onRemoval)
+                .build() : null;
+    }
+
+    /**
+     * Resolves document frequencies of the given terms as the sum of their frequencies in every segment,
+     * serving as many of them as possible from the cache.
+     *
+     * @return document frequencies indexed by the term id
+     */
+    int[] docFreqs(IndexReader reader, String field, BytesRefHash terms) throws IOException {
+        if (cache == null) {
+            return new TermFrequencies(reader, field).docFreqs(terms);
+        }
+
+        final int size = terms.size();
+        final int[] docFreqs = new int[size];
+        final BytesRefHash missed = new BytesRefHash();
+        final int[] missedIds = new int[size];
+        final BytesRef term = new BytesRef();
+
+        for (LeafReaderContext leaf : reader.leaves()) {
+            final IndexReader.CacheHelper cacheHelper = leaf.reader().getCoreCacheHelper();
+            final IndexReader.CacheKey segmentKey = cacheHelper != null ? cacheHelper.getKey() : null;
+
+            for (int id = 0; id < size; id++) {
+                terms.get(id, term);
+                Integer docFreq = segmentKey != null ? cache.get(new Key(segmentKey, field, term)) : null;
+                if (docFreq != null) {
+                    docFreqs[id] += docFreq;
+                } else {
+                    missedIds[missed.add(term)] = id;
+                }
+            }
+
+            if (missed.size() > 0) {
+                Set<Key> keys = segmentKey != null ? keysOf(segmentKey, cacheHelper) : null;
+                int[] missedDocFreqs = new TermFrequencies(leaf.reader(), field).docFreqs(missed);
+                for (int missedId = 0; missedId < missedDocFreqs.length; missedId++) {
+                    docFreqs[missedIds[missedId]] += missedDocFreqs[missedId];
+                    if (keys != null) {
+                        missed.get(missedId, term);
+                        Key key = new Key(segmentKey, field, BytesRef.deepCopyOf(term));
+                        keys.add(key);
+                        cache.put(key, missedDocFreqs[missedId]);
+                    }
+                }
+                // the sorted hash must be cleared before the next segment
+                missed.clear();
+                missed.reinit();
+            }
+        }
+
+        return docFreqs;
+    }
+
+    public Cache.CacheStats stats() {
+        return cache != null ? cache.stats() : new Cache.CacheStats(0, 0, 0);
+    }
+
+    public int count() {
+        return cache != null ? cache.count() : 0;
+    }
+
+    private Set<Key> keysOf(IndexReader.CacheKey segmentKey, IndexReader.CacheHelper cacheHelper) {
+        Set<Key> keys = segmentKeys.get(segmentKey);
+        if (keys == null) {
+            Set<Key> created = ConcurrentCollections.newConcurrentSet();
+            keys = segmentKeys.putIfAbsent(segmentKey, created);
+            if (keys == null) {
+                keys = created;
+                cacheHelper.addClosedListener(this::invalidate);
+            }
+        }
+        return keys;
+    }
+
+    private void invalidate(IndexReader.CacheKey segmentKey) {
+        Set<Key> keys = segmentKeys.remove(segmentKey);
+        if (keys != null) {
+            for (Key key : keys) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    private void onRemoval(RemovalNotification<Key, Integer> notification) {
+        // entries evicted by size are forgotten by their segments as well
+        Set<Key> keys = segmentKeys.get(notification.getKey().segmentKey);
+        if (keys != null) {
+            keys.remove(notification.getKey());
+        }
+    }
+
+    private static final class Key {
+
+        final IndexReader.CacheKey segmentKey;
+        final String field;
+        final BytesRef term;
+
+        private Key(IndexReader.CacheKey segmentKey, String field, BytesRef term) {
+            this.segmentKey = segmentKey;
+            this.field = field;
+            this.term = term;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key) o;
+            return segmentKey == that.segmentKey &&
+                    Objects.equals(field, that.field) &&
+                    Objects.equals(term, that.term);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(segmentKey, field, term);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.papahigh.keyboardswitcher;
+
+import org.apache.lucene.util.LuceneTestCase;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+
+public class CharMappingsTests extends LuceneTestCase {
+
+    public void testBlocks() {
+        CharMappings charMappings = CharMappings.of("abz", "абя");
+
+        assertEquals('а', charMappings.get('a'));
+        assertEquals('я', charMappings.get('z'));
+        assertEquals('z', charMappings.get('я'));
+        assertEquals(Character.MIN_VALUE, charMappings.get('c'));
+        assertEquals(Character.MIN_VALUE, charMappings.get('в'));
+        assertEquals(Character.MIN_VALUE, charMappings.get(Character.MIN_VALUE));
+        assertEquals(Character.MIN_VALUE, charMappings.get(Character.MAX_VALUE));
+        assertEquals(('z' - 'a' + 1) + ('я' - 'а' + 1), charMappings.size());
+    }
+
+    public void testHighCodePoints() {
+        CharMappings charMappings = CharMappings.of("qw.", "ქწ。");
+
+        assertEquals('ქ', charMappings.get('q'));
+        assertEquals('。', charMappings.get('.'));
+        assertEquals('.', charMappings.get('。'));
+        assertTrue(charMappings.size() < 32);
+    }
+
+    public void testBuiltInLayouts() {
+        for (Languages language : Languages.values()) {
+            CharMappings charMappings = language.newInstance().getCharMappings();
+            for (char c = 1; c < Character.MAX_VALUE; c++) {
+                char mapped = charMappings.get(c);
+                if (mapped != Character.MIN_VALUE) {
+                    assertEquals(c, charMappings.get(mapped));
+                }
+            }
+            assertTrue(charMappings.size() < 256);
+        }
+    }
+
+    public void testEmpty() {
+        CharMappings charMappings = new CharMappings.Builder().build();
+        assertEquals(Character.MIN_VALUE, charMappings.get('a'));
+        assertEquals(0, charMappings.size());
+    }
+
+    public void testConflicts() {
+        Throwable e = expectThrows(Throwable.class, () -> CharMappings.of("ab", "аа"));
+        assertThat(e, instanceOf(IllegalArgumentException.class));
+        assertThat(e.getMessage(), containsString("Conflicting mappings of [b]"));
+    }
+}
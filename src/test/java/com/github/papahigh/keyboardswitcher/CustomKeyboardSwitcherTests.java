@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.papahigh.keyboardswitcher;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.LuceneTestCase;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+
+public class CustomKeyboardSwitcherTests extends LuceneTestCase {
+
+    private static final String ENGLISH = "wertyuiopasdfghjklzxcvbnm";
+    private static final String GREEK = "ςερτυθιοπασδφγηξκλζχψωβνμ";
+
+    public void testPairStrings() {
+        KeyboardSwitcher switcher = new CustomKeyboardSwitcher("greek", ENGLISH, GREEK);
+
+        assertEquals("greek", switcher.getName());
+        assertEquals(GREEK, switcher.encode(ENGLISH));
+        assertEquals(ENGLISH, switcher.encode(GREEK));
+        assertEquals("καλημερα 64", switcher.encode("kalhmera 64"));
+    }
+
+    public void testMappings() {
+        Map<String, String> mappings = new LinkedHashMap<>();
+        for (int i = 0; i < ENGLISH.length(); i++) {
+            mappings.put(String.valueOf(ENGLISH.charAt(i)), String.valueOf(GREEK.charAt(i)));
+        }
+        KeyboardSwitcher switcher = new CustomKeyboardSwitcher("greek", mappings);
+
+        assertEquals(new CustomKeyboardSwitcher("greek", ENGLISH, GREEK), switcher);
+        assertEquals(GREEK, switcher.encode(ENGLISH));
+    }
+
+    public void testRules() {
+        KeyboardSwitcher switcher = CustomKeyboardSwitcher.parse("test", Arrays.asList("q => й", " ; =>ж", "= => ъ", "> => Ю"));
+
+        assertEquals("йж ъЮ", switcher.encode("q; =>"));
+        assertEquals("q; =>", switcher.encode("йж ъЮ"));
+
+        char[] dest = new char[4];
+        assertTrue(switcher.switchLayout("й;ab".toCharArray(), 0, 4, dest, 0));
+        assertTrue(Arrays.equals("qжab".toCharArray(), dest));
+
+        BytesRefBuilder bytes = new BytesRefBuilder();
+        assertTrue(switcher.switchLayout(new BytesRef("q;x"), bytes));
+        assertEquals(new BytesRef("йжx"), bytes.get());
+    }
+
+    public void testInvalidDefinitions() {
+        assertInvalid(() -> new CustomKeyboardSwitcher(null, "ab", "аб"), "No keyboard layout name was provided");
+        assertInvalid(() -> new CustomKeyboardSwitcher("test", "", ""), "No mappings were provided for keyboard layout [test]");
+        assertInvalid(() -> new CustomKeyboardSwitcher("test", "ab", "а"), "Source and target of keyboard layout [test] differ");
+        assertInvalid(() -> new CustomKeyboardSwitcher("test", "aa", "аб"), "Conflicting mappings of [a] in keyboard layout [test]");
+        assertInvalid(() -> CustomKeyboardSwitcher.parse("test", Arrays.asList("ab => аб")), "Invalid mapping [ab]");
+        assertInvalid(() -> CustomKeyboardSwitcher.parse("test", Arrays.asList("a")), "Invalid rule [a]");
+        assertInvalid(() -> new CustomKeyboardSwitcher("test", "a", "\uD83D"), "Unsupported char");
+    }
+
+    private static void assertInvalid(ThrowingRunnable runnable, String message) {
+        Throwable e = expectThrows(Throwable.class, runnable);
+        assertThat(e, instanceOf(IllegalArgumentException.class));
+        assertThat(e.getMessage(), containsString(message));
+    }
+}
@@ -17,6 +17,10 @@ package com.github.papahigh.keyboardswitcher;
 
 import org.apache.lucene.util.LuceneTestCase;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.instanceOf;
 
@@ -34,6 +38,13 @@ public class KeyboardSwitcherProviderTests extends LuceneTestCase {
         assertEquals(switcher4.getClass(), RussianKeyboardSwitcher.class);
     }
 
+    public void testBuiltIn() {
+        assertTrue(KeyboardSwitcherProvider.isBuiltIn("RUSSIAN"));
+        assertTrue(KeyboardSwitcherProvider.isBuiltIn("Ukrainian"));
+        assertTrue(KeyboardSwitcherProvider.isBuiltIn("belarusian"));
+        assertFalse(KeyboardSwitcherProvider.isBuiltIn("greek"));
+    }
+
     public void testRussianSwitcher() {
         KeyboardSwitcher switcher = KeyboardSwitcherProvider.provide("russian");
         assertEquals(switcher.getClass(), RussianKeyboardSwitcher.class);
@@ -49,10 +60,54 @@ public class KeyboardSwitcherProviderTests extends LuceneTestCase {
         assertEquals(switcher.getClass(), BelarusianKeyboardSwitcher.class);
     }
 
+    public void testSameInstance() {
+        for (Languages language : Languages.values()) {
+            KeyboardSwitcher switcher = KeyboardSwitcherProvider.provide(language);
+            assertSame(switcher, KeyboardSwitcherProvider.provide(language));
+            assertSame(switcher, KeyboardSwitcherProvider.provide(language.name()));
+            assertSame(switcher, KeyboardSwitcherProvider.provide(language.name().toLowerCase(Locale.ROOT)));
+        }
+    }
+
+    public void testCustomLayout() {
+        KeyboardSwitcher greek = new CustomKeyboardSwitcher("Test_Greek", "abg", "αβγ");
+        KeyboardSwitcherProvider.register(Collections.singletonList(greek));
+        try {
+            assertSame(greek, KeyboardSwitcherProvider.provide("Test_Greek"));
+            assertSame(greek, KeyboardSwitcherProvider.provide("test_greek"));
+            assertSame(greek, KeyboardSwitcherProvider.provide("TEST_GREEK"));
+        } finally {
+            KeyboardSwitcherProvider.unregister(Collections.singletonList("Test_Greek"));
+        }
+
+        Throwable e = expectThrows(Throwable.class, () -> KeyboardSwitcherProvider.provide("test_greek"));
+        assertThat(e, instanceOf(IllegalArgumentException.class));
+
+        e = expectThrows(Throwable.class, () -> KeyboardSwitcherProvider.register(
+                Collections.singletonList(new CustomKeyboardSwitcher("Russian", "abg", "αβγ"))));
+        assertThat(e, instanceOf(IllegalArgumentException.class));
+        assertThat(e.getMessage(), containsString("Keyboard layout [Russian] is already defined"));
+    }
+
+    public void testCustomLayoutsDifferentInCase() {
+        Throwable e = expectThrows(Throwable.class, () -> KeyboardSwitcherProvider.register(Arrays.asList(
+                new CustomKeyboardSwitcher("Test_Greek", "abg", "αβγ"),
+                new CustomKeyboardSwitcher("test_greek", "abd", "αβδ"))));
+        assertThat(e, instanceOf(IllegalArgumentException.class));
+        assertThat(e.getMessage(), containsString("Keyboard layout [test_greek] is already defined as [Test_Greek]"));
+
+        e = expectThrows(Throwable.class, () -> KeyboardSwitcherProvider.provide("test_greek"));
+        assertThat(e, instanceOf(IllegalArgumentException.class));
+    }
+
     public void testNullLanguage() {
         Throwable e = expectThrows(Throwable.class, () -> KeyboardSwitcherProvider.provide((String) null));
         assertThat(e, instanceOf(IllegalArgumentException.class));
         assertThat(e.getMessage(), containsString("No language was provided"));
+
+        e = expectThrows(Throwable.class, () -> KeyboardSwitcherProvider.provide((Languages) null));
+        assertThat(e, instanceOf(IllegalArgumentException.class));
+        assertThat(e.getMessage(), containsString("No language was provided"));
     }
 
     public void testUnknownLanguage() {
@@ -16,8 +16,13 @@
 package com.github.papahigh.keyboardswitcher;
 
 import org.apache.commons.codec.EncoderException;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.LuceneTestCase;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.Arrays;
 
 import static org.hamcrest.CoreMatchers.containsString;
@@ -91,4 +96,57 @@ public class RussianKeyboardSwitcherTests extends LuceneTestCase {
 
     }
 
-}
\ No newline at end of file
+    public void testSwitchLayoutBytes() {
+        KeyboardSwitcher switcher = KeyboardSwitcherProvider.provide("russian");
+        BytesRefBuilder builder = new BytesRefBuilder();
+
+        String firstRowEnglish = "qwertyuiop[]QWERTYUIOP{}";
+        String firstRowRussian = "йцукенгшщзхъЙЦУКЕНГШЩЗХЪ";
+
+        assertTrue(switcher.switchLayout(new BytesRef(firstRowRussian), builder));
+        assertEquals(new BytesRef(firstRowEnglish), builder.get());
+        assertTrue(switcher.switchLayout(new BytesRef(firstRowEnglish), builder));
+        assertEquals(new BytesRef(firstRowRussian), builder.get());
+
+        String secondRowEnglish = "asdfghjkl;'\\ASDFGHJKL:\"|";
+        String secondRowRussian = "фывапролджэёФЫВАПРОЛДЖЭЁ";
+
+        assertTrue(switcher.switchLayout(new BytesRef(secondRowRussian), builder));
+        assertEquals(new BytesRef(secondRowEnglish), builder.get());
+        assertTrue(switcher.switchLayout(new BytesRef(secondRowEnglish), builder));
+        assertEquals(new BytesRef(secondRowRussian), builder.get());
+
+        String thirdRowEnglish = "zxcvbnm,.ZXCVBNM<>";
+        String thirdRowRussian = "ячсмитьбюЯЧСМИТЬБЮ";
+
+        assertTrue(switcher.switchLayout(new BytesRef(thirdRowRussian), builder));
+        assertEquals(new BytesRef(thirdRowEnglish), builder.get());
+        assertTrue(switcher.switchLayout(new BytesRef(thirdRowEnglish), builder));
+        assertEquals(new BytesRef(thirdRowRussian), builder.get());
+
+        assertFalse(switcher.switchLayout(new BytesRef("12 3€"), builder));
+        assertEquals(new BytesRef("12 3€"), builder.get());
+
+        assertTrue(switcher.switchLayout(new BytesRef("Rjhjkm 64€"), builder));
+        assertEquals(new BytesRef(switcher.encode("Rjhjkm 64€")), builder.get());
+    }
+
+    public void testSwitchLayoutStream() throws IOException {
+        KeyboardSwitcher switcher = KeyboardSwitcherProvider.provide("russian");
+
+        StringBuilder english = new StringBuilder();
+        StringBuilder russian = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            english.append("ghbdtn vbh 64 ");
+            russian.append("привет мир 64 ");
+        }
+
+        StringWriter writer = new StringWriter();
+        switcher.switchLayout(new StringReader(english.toString()), writer);
+        assertEquals(russian.toString(), writer.toString());
+
+        writer = new StringWriter();
+        switcher.switchLayout(new StringReader(""), writer);
+        assertEquals("", writer.toString());
+    }
+}
@@ -16,6 +16,8 @@
 package com.github.papahigh.keyboardswitcher;
 
 import org.apache.commons.codec.EncoderException;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.LuceneTestCase;
 
 import java.util.Arrays;
@@ -92,4 +94,39 @@ public class UkrainianKeyboardSwitcherTests extends LuceneTestCase {
         assertEquals(thirdRowRussian, switcher.encode(thirdRowEnglish));
 
     }
-}
\ No newline at end of file
+
+    public void testSwitchLayoutBytes() {
+        KeyboardSwitcher switcher = KeyboardSwitcherProvider.provide("ukrainian");
+        BytesRefBuilder builder = new BytesRefBuilder();
+
+        String firstRowEnglish = "qwertyuiop[]QWERTYUIOP{}";
+        String firstRowRussian = "йцукенгшщзхїЙЦУКЕНГШЩЗХЇ";
+
+        assertTrue(switcher.switchLayout(new BytesRef(firstRowRussian), builder));
+        assertEquals(new BytesRef(firstRowEnglish), builder.get());
+        assertTrue(switcher.switchLayout(new BytesRef(firstRowEnglish), builder));
+        assertEquals(new BytesRef(firstRowRussian), builder.get());
+
+        String secondRowEnglish = "asdfghjkl;'ASDFGHJKL:\"";
+        String secondRowRussian = "фівапролджєФІВАПРОЛДЖЄ";
+
+        assertTrue(switcher.switchLayout(new BytesRef(secondRowRussian), builder));
+        assertEquals(new BytesRef(secondRowEnglish), builder.get());
+        assertTrue(switcher.switchLayout(new BytesRef(secondRowEnglish), builder));
+        assertEquals(new BytesRef(secondRowRussian), builder.get());
+
+        String thirdRowEnglish = "\\zxcvbnm,.|ZXCVBNM<>";
+        String thirdRowRussian = "ґячсмитьбюҐЯЧСМИТЬБЮ";
+
+        assertTrue(switcher.switchLayout(new BytesRef(thirdRowRussian), builder));
+        assertEquals(new BytesRef(thirdRowEnglish), builder.get());
+        assertTrue(switcher.switchLayout(new BytesRef(thirdRowEnglish), builder));
+        assertEquals(new BytesRef(thirdRowRussian), builder.get());
+
+        assertFalse(switcher.switchLayout(new BytesRef("12 3€"), builder));
+        assertEquals(new BytesRef("12 3€"), builder.get());
+
+        assertTrue(switcher.switchLayout(new BytesRef("Rjhjkm 64€"), builder));
+        assertEquals(new BytesRef(switcher.encode("Rjhjkm 64€")), builder.get());
+    }
+}
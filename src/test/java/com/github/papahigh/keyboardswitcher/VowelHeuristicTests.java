@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.papahigh.keyboardswitcher;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class VowelHeuristicTests extends LuceneTestCase {
+
+    public void testCorrectlyTypedIsMorePlausible() {
+        KeyboardSwitcher switcher = KeyboardSwitcherProvider.provide("russian");
+
+        for (String word : new String[]{"hello", "nike", "привет", "кроссовки"}) {
+            float plausibility = plausibility(word);
+            assertTrue(word, plausibility >= 0.5f);
+            assertTrue(word, plausibility > plausibility(switcher.encode(word)));
+        }
+    }
+
+    public void testConsonantClusters() {
+        // runs of four consonants score nothing, so such words may lose to their switched variants
+        assertTrue(plausibility("взгляд") >= 0.5f);
+        assertTrue(plausibility("взгляд") < plausibility("dpukzl"));
+    }
+
+    public void testNoVowels() {
+        assertEquals(0.2f, plausibility("ghbdtn"), 0.0001f);
+        assertEquals(0.125f, plausibility("rhjccjdrb"), 0.0001f);
+    }
+
+    public void testPunctuation() {
+        assertTrue(plausibility("ve;crbt") < plausibility("мужские"));
+        assertEquals(0f, plausibility(";t"), 0f);
+    }
+
+    public void testMixedScript() {
+        assertEquals(VowelHeuristic.MIXED_SCRIPT, plausibility("iPhoneы"), 0f);
+        assertEquals(VowelHeuristic.MIXED_SCRIPT, plausibility("rhjccовки"), 0f);
+    }
+
+    public void testUnknownScript() {
+        assertEquals(VowelHeuristic.UNKNOWN_SCRIPT, plausibility("καλημέρα"), 0f);
+        assertEquals(VowelHeuristic.UNKNOWN_SCRIPT, plausibility("καλη-64"), 0f);
+        assertEquals(VowelHeuristic.MIXED_SCRIPT, plausibility("καλημέρα hello"), 0f);
+        assertEquals(VowelHeuristic.MIXED_SCRIPT, plausibility("καλημέραы"), 0f);
+    }
+
+    public void testDigits() {
+        assertEquals(0.5f, plausibility("64"), 0f);
+        assertEquals(1f, plausibility("64пи"), 0f);
+        assertEquals(0.5f, plausibility("b"), 0f);
+        assertEquals(0.5f, plausibility(""), 0f);
+    }
+
+    public void testOffset() {
+        BytesRef bytes = new BytesRef("ghbdtn привет");
+        assertEquals(0.9f, VowelHeuristic.plausibility(new BytesRef(bytes.bytes, 7, bytes.length - 7)), 0.0001f);
+    }
+
+    private static float plausibility(String token) {
+        return VowelHeuristic.plausibility(new BytesRef(token));
+    }
+}
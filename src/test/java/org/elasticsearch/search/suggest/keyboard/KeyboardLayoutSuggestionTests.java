@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 Nikolay Papakha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.suggest.keyboard;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.search.suggest.Suggest;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class KeyboardLayoutSuggestionTests extends ESTestCase {
+
+    public void testSerialization() throws IOException {
+        KeyboardLayoutSuggestion suggestion = new KeyboardLayoutSuggestion("keyboard_layout", 5);
+        KeyboardLayoutSuggestion.Entry entry = new KeyboardLayoutSuggestion.Entry(new Text("GHBDTN"), 0, 6);
+        // derived from the entry text switched into the layout, as is and lower cased
+        entry.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("ПРИВЕТ"), 3, true, "russian"));
+        entry.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("привет"), 2, true, "russian"));
+        // derived from the entry text itself
+        entry.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("GHBDTN"), 1, false));
+        // a completion which can't be derived
+        entry.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("приветствие"), 1, true, "russian"));
+        // a custom layout which the receiving node doesn't have
+        entry.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("γηβδτν"), 1, true, "test_greek"));
+        suggestion.addTerm(entry);
+
+        KeyboardLayoutSuggestion.Entry phrase = new KeyboardLayoutSuggestion.Entry(new Text("ghbdtn vbh"), 0, 10);
+        phrase.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("привет мир"), 0.4f, 1, true, "russian"));
+        phrase.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("ghbdtn vbh"), 0.064f, 0, false, null));
+        suggestion.addTerm(phrase);
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        suggestion.writeTo(out);
+
+        BytesRef bytes = out.bytes().toBytesRef();
+        // derived options are sent without texts, the completion and the custom layout option with them
+        assertEquals(0, count(bytes, "ПРИВЕТ"));
+        assertEquals(1, count(bytes, "привет"));
+        assertEquals(1, count(bytes, "GHBDTN"));
+        assertEquals(1, count(bytes, "γηβδτν"));
+        assertEquals(1, count(bytes, "ghbdtn vbh"));
+
+        StreamInput in = out.bytes().streamInput();
+        KeyboardLayoutSuggestion read = new KeyboardLayoutSuggestion(in);
+        assertEquals(0, in.available());
+        assertEquals(suggestion.getEntries().size(), read.getEntries().size());
+        for (int i = 0; i < suggestion.getEntries().size(); i++) {
+            assertEquals(toString(suggestion.getEntries().get(i)), toString(read.getEntries().get(i)));
+        }
+    }
+
+    public void testReduce() {
+        KeyboardLayoutSuggestion shard1 = new KeyboardLayoutSuggestion("keyboard_layout", 2);
+        KeyboardLayoutSuggestion.Entry entry1 = new KeyboardLayoutSuggestion.Entry(new Text("ghbdtn"), 0, 6);
+        entry1.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("привет"), 2, true, "russian"));
+        entry1.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("приветствие"), 2, true, "russian"));
+        shard1.addTerm(entry1);
+
+        KeyboardLayoutSuggestion shard2 = new KeyboardLayoutSuggestion("keyboard_layout", 2);
+        KeyboardLayoutSuggestion.Entry entry2 = new KeyboardLayoutSuggestion.Entry(new Text("ghbdtn"), 0, 6);
+        entry2.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("приветы"), 3, true, "russian"));
+        entry2.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("привет"), 2, true, "russian"));
+        shard2.addTerm(entry2);
+
+        Suggest.Suggestion<KeyboardLayoutSuggestion.Entry> reduced = shard1.reduce(Arrays.asList(shard1, shard2));
+        KeyboardLayoutSuggestion.Entry entry = reduced.getEntries().get(0);
+        assertEquals(2, entry.getOptions().size());
+        assertEquals("{\"text\":\"привет\",\"freq\":4,\"switch\":true,\"layout\":\"russian\"}",
+                toString(entry.getOptions().get(0)));
+        assertEquals("{\"text\":\"приветы\",\"freq\":3,\"switch\":true,\"layout\":\"russian\"}",
+                toString(entry.getOptions().get(1)));
+    }
+
+    public void testReduceScored() {
+        KeyboardLayoutSuggestion shard1 = new KeyboardLayoutSuggestion("keyboard_layout", 2);
+        KeyboardLayoutSuggestion.Entry entry1 = new KeyboardLayoutSuggestion.Entry(new Text("ghbdtn vbh"), 0, 10);
+        entry1.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("привет vbh"), 0.3f, 5, true, "russian"));
+        entry1.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("привет мир"), 0.2f, 1, true, "russian"));
+        shard1.addTerm(entry1);
+
+        KeyboardLayoutSuggestion shard2 = new KeyboardLayoutSuggestion("keyboard_layout", 2);
+        KeyboardLayoutSuggestion.Entry entry2 = new KeyboardLayoutSuggestion.Entry(new Text("ghbdtn vbh"), 0, 10);
+        entry2.addOption(new KeyboardLayoutSuggestion.Entry.Option(new Text("привет мир"), 0.4f, 1, true, "russian"));
+        shard2.addTerm(entry2);
+
+        Suggest.Suggestion<KeyboardLayoutSuggestion.Entry> reduced = shard1.reduce(Arrays.asList(shard1, shard2));
+        KeyboardLayoutSuggestion.Entry entry = reduced.getEntries().get(0);
+        assertEquals(2, entry.getOptions().size());
+        assertEquals("{\"text\":\"привет мир\",\"score\":0.4,\"freq\":2,\"switch\":true,\"layout\":\"russian\"}",
+                toString(entry.getOptions().get(0)));
+        assertEquals("{\"text\":\"привет vbh\",\"score\":0.3,\"freq\":5,\"switch\":true,\"layout\":\"russian\"}",
+                toString(entry.getOptions().get(1)));
+    }
+
+    private static int count(BytesRef bytes, String text) {
+        BytesRef term = new BytesRef(text);
+        int count = 0;
+        for (int i = 0; i + term.length <= bytes.length; i++) {
+            if (StringHelper.startsWith(new BytesRef(bytes.bytes, bytes.offset + i, bytes.length - i), term)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String toString(KeyboardLayoutSuggestion.Entry.Option option) {
+        try {
+            XContentBuilder builder = JsonXContent.contentBuilder();
+            builder.startObject();
+            option.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            builder.endObject();
+            return Strings.toString(builder);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String toString(KeyboardLayoutSuggestion.Entry entry) {
+        return Strings.toString((builder, params) -> entry.toXContent(builder, params));
+    }
+}